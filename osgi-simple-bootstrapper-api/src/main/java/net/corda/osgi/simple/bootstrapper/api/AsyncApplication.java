@@ -0,0 +1,11 @@
+package net.corda.osgi.simple.bootstrapper.api;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Variant of {@link Application} that doesn't hold the thread it is started from: the returned stage
+ * completes with the exit code of the application, the framework is stopped when that happens
+ */
+public interface AsyncApplication {
+    CompletionStage<Integer> run(String[] args);
+}
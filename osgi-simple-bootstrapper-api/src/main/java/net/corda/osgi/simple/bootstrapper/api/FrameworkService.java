@@ -4,4 +4,31 @@ public interface FrameworkService {
     String getMainApplicationComponentName();
     String[] getArgs();
     void setExitCode(int exitCode);
-}
\ No newline at end of file
+
+    /**
+     * Runs the {@link Warmup} services registered so far, the first time it is called, and returns once they
+     * have all completed or their time budget is exhausted
+     */
+    default void awaitWarmup() {}
+
+    /**
+     * Notifies the bootstrapper that the application component {@code componentName} is about to run
+     */
+    default void applicationStarting(String componentName) {}
+
+    /**
+     * @return true if every {@link Application} and {@link AsyncApplication} service is to be run concurrently,
+     * regardless of the Main-Application-Component
+     */
+    default boolean isConcurrentApplications() {
+        return false;
+    }
+
+    /**
+     * Notifies the bootstrapper that the application component {@code componentName} has completed,
+     * when applications run concurrently the bootstrapper stops the framework once its exit code policy is met
+     */
+    default void applicationCompleted(String componentName, int exitCode) {
+        setExitCode(exitCode);
+    }
+}
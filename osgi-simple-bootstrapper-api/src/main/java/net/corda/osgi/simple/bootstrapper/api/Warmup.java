@@ -0,0 +1,11 @@
+package net.corda.osgi.simple.bootstrapper.api;
+
+/**
+ * Service exercising the hot paths of a bundle before the application starts, so that they have been
+ * compiled by the JIT by the time the first requests come in. The bootstrapper runs all the registered
+ * warmups in parallel, within a time budget, right before the {@link Application} or the {@link AsyncApplication}
+ * is run; a warmup still running when the budget is exhausted is interrupted
+ */
+public interface Warmup {
+    void warmup() throws Exception;
+}
@@ -0,0 +1,12 @@
+package net.corda.osgi.simple.bootstrapper.api.metrics;
+
+/**
+ * Monotonically increasing value, safe to update from any thread without allocating
+ */
+public interface Counter {
+    void increment();
+
+    void add(long amount);
+
+    long get();
+}
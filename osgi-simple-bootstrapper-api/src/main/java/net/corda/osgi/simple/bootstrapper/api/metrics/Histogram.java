@@ -0,0 +1,12 @@
+package net.corda.osgi.simple.bootstrapper.api.metrics;
+
+/**
+ * Distribution of observed values over a fixed set of buckets, safe to update from any thread without allocating
+ */
+public interface Histogram {
+    void record(double value);
+
+    long getCount();
+
+    double getSum();
+}
@@ -0,0 +1,36 @@
+package net.corda.osgi.simple.bootstrapper.api.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the application metrics, published as an OSGi service by the bootstrapper
+ * and exported through JMX and, when enabled, a Prometheus text endpoint.
+ * A metric is identified by its name and its labels, given as alternating names and values:
+ * asking twice for the same metric returns the same instance, metrics are meant to be
+ * looked up once and then updated on the hot path.
+ * Names and label names follow the Prometheus conventions, e.g. {@code http_requests_total}.
+ */
+public interface MetricRegistry {
+
+    /**
+     * @throws IllegalArgumentException if the name or the labels are invalid
+     * or if the metric has already been registered with another type
+     */
+    Counter counter(String name, String help, String... labels);
+
+    /**
+     * Registers a metric whose value is read from {@code value} each time the metrics are exported,
+     * replacing the previous gauge with the same name and labels
+     */
+    void gauge(String name, String help, DoubleSupplier value, String... labels);
+
+    /**
+     * @param buckets the upper bounds of the buckets, in ascending order
+     */
+    Histogram histogram(String name, String help, double[] buckets, String... labels);
+
+    /**
+     * Removes a metric, typically a gauge that refers to objects of a bundle that is being stopped
+     */
+    void remove(String name, String... labels);
+}
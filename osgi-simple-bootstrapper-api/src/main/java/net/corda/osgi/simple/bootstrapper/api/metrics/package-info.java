@@ -0,0 +1,4 @@
+@Export
+package net.corda.osgi.simple.bootstrapper.api.metrics;
+
+import org.osgi.annotation.bundle.Export;
@@ -19,19 +19,20 @@ import java.util.logging.Level;
 @Component(scope = ServiceScope.SINGLETON)
 public class ApplicationRunner {
 
-    private final Application application;
-
     @Activate
     @SneakyThrows
     public ApplicationRunner(@Reference ServiceReference<Application> ref, BundleContext bundleContext, ComponentContext componentContext) {
-        application = bundleContext.getService(ref);
         String componentName = (String) ref.getProperty("component.name");
         ServiceReference<FrameworkService> frameworkServiceReference = bundleContext.getServiceReference(FrameworkService.class);
         FrameworkService frameworkService = bundleContext.getService(frameworkServiceReference);
         String mainApplicationComponentName = frameworkService.getMainApplicationComponentName();
-        if(mainApplicationComponentName == null || Objects.equals(mainApplicationComponentName, componentName)) {
+        // with concurrent applications, ConcurrentApplicationRunner takes care of every application
+        if(!frameworkService.isConcurrentApplications() &&
+                (mainApplicationComponentName == null || Objects.equals(mainApplicationComponentName, componentName))) {
             Application application = bundleContext.getService(ref);
             try {
+                frameworkService.awaitWarmup();
+                frameworkService.applicationStarting(componentName);
                 frameworkService.setExitCode(application.run(frameworkService.getArgs()));
             } catch(Exception ex) {
                 log.log(Level.SEVERE, ex, ex::getMessage);
@@ -0,0 +1,101 @@
+package net.corda.osgi.simple.bootstrapper.application;
+
+import lombok.extern.java.Log;
+import net.corda.osgi.simple.bootstrapper.api.AsyncApplication;
+import net.corda.osgi.simple.bootstrapper.api.FrameworkService;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ServiceScope;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.logging.Level;
+
+/**
+ * Runs an {@link AsyncApplication} on a thread of its own, a virtual one when the JVM supports them,
+ * so that the activation of this component returns right away instead of lasting as long as the application
+ */
+@Log
+@Component(scope = ServiceScope.SINGLETON)
+public class AsyncApplicationRunner {
+
+    @Activate
+    public AsyncApplicationRunner(@Reference ServiceReference<AsyncApplication> ref, BundleContext bundleContext) {
+        String componentName = (String) ref.getProperty("component.name");
+        ServiceReference<FrameworkService> frameworkServiceReference = bundleContext.getServiceReference(FrameworkService.class);
+        FrameworkService frameworkService = bundleContext.getService(frameworkServiceReference);
+        String mainApplicationComponentName = frameworkService.getMainApplicationComponentName();
+        // with concurrent applications, ConcurrentApplicationRunner takes care of every application
+        if(!frameworkService.isConcurrentApplications() &&
+                (mainApplicationComponentName == null || Objects.equals(mainApplicationComponentName, componentName))) {
+            AsyncApplication application = bundleContext.getService(ref);
+            newThread("application-" + componentName, () -> {
+                CompletionStage<Integer> stage;
+                try {
+                    // on the application thread, so that the warmups don't hold the activation of this component
+                    frameworkService.awaitWarmup();
+                    frameworkService.applicationStarting(componentName);
+                    stage = application.run(frameworkService.getArgs());
+                } catch(Exception ex) {
+                    stage = null;
+                    complete(bundleContext, ref, frameworkService, null, ex);
+                }
+                if(stage != null) {
+                    stage.whenComplete((exitCode, throwable) ->
+                            complete(bundleContext, ref, frameworkService, exitCode, throwable));
+                }
+            }).start();
+        }
+    }
+
+    private static void complete(BundleContext bundleContext,
+                                 ServiceReference<AsyncApplication> ref,
+                                 FrameworkService frameworkService,
+                                 Integer exitCode,
+                                 Throwable throwable) {
+        try {
+            if(throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ?
+                        throwable.getCause() : throwable;
+                log.log(Level.SEVERE, cause, cause::getMessage);
+                frameworkService.setExitCode(1);
+            } else {
+                frameworkService.setExitCode(exitCode == null ? 0 : exitCode);
+            }
+        } finally {
+            try {
+                bundleContext.getBundle(0).stop();
+            } catch (BundleException | IllegalStateException ex) {
+                log.log(Level.WARNING, ex, ex::getMessage);
+            }
+            try {
+                bundleContext.ungetService(ref);
+            } catch (IllegalStateException ise) {
+                // the bundle context is no longer valid once the framework has stopped
+            }
+        }
+    }
+
+    /**
+     * @return an unstarted virtual thread when the JVM supports them (Java 21+), a platform thread otherwise
+     */
+    private static Thread newThread(String name, Runnable runnable) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // looked up on the public builder interface, the implementing class is not accessible
+            Class<?> builderClass = ofVirtual.getReturnType();
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+            return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, runnable);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            // Java 18 and older, or Java 19 and 20 without preview features
+            return new Thread(runnable, name);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package net.corda.osgi.simple.bootstrapper.application;
+
+import lombok.extern.java.Log;
+import net.corda.osgi.simple.bootstrapper.api.Application;
+import net.corda.osgi.simple.bootstrapper.api.AsyncApplication;
+import net.corda.osgi.simple.bootstrapper.api.FrameworkService;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * When the bootstrapper runs applications concurrently, runs every {@link Application} and {@link AsyncApplication}
+ * service on a thread pool as soon as it is registered and reports its exit code to the {@link FrameworkService},
+ * which decides when the framework stops
+ */
+@Log
+@Component(immediate = true)
+public class ConcurrentApplicationRunner {
+
+    private final BundleContext bundleContext;
+    private final FrameworkService frameworkService;
+
+    // null unless the applications run concurrently
+    private final ExecutorService executor;
+
+    // ids of the services already run
+    private final Set<Long> serviceIds = ConcurrentHashMap.newKeySet();
+
+    // applications submitted that have not been reported as starting yet, they wait for the warmup
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    // completions held back while some applications are waiting, so that the framework service
+    // doesn't stop the framework before it knows about every application
+    private final List<Runnable> deferredCompletions = new ArrayList<>();
+
+    @Activate
+    public ConcurrentApplicationRunner(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+        ServiceReference<FrameworkService> frameworkServiceReference = bundleContext.getServiceReference(FrameworkService.class);
+        frameworkService = bundleContext.getService(frameworkServiceReference);
+        if(frameworkService.isConcurrentApplications()) {
+            AtomicInteger threadCount = new AtomicInteger(0);
+            executor = Executors.newCachedThreadPool(runnable ->
+                    new Thread(runnable, "application-" + threadCount.incrementAndGet()));
+        } else {
+            executor = null;
+        }
+    }
+
+    @Reference(service = Application.class, cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    void addApplication(ServiceReference<Application> ref) {
+        submit(ref, application -> CompletableFuture.completedFuture(application.run(frameworkService.getArgs())));
+    }
+
+    void removeApplication(ServiceReference<Application> ref) {
+    }
+
+    @Reference(service = AsyncApplication.class, cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    void addAsyncApplication(ServiceReference<AsyncApplication> ref) {
+        submit(ref, application -> application.run(frameworkService.getArgs()));
+    }
+
+    void removeAsyncApplication(ServiceReference<AsyncApplication> ref) {
+    }
+
+    private <T> void submit(ServiceReference<T> ref, Function<T, CompletionStage<Integer>> runner) {
+        if(executor == null || !serviceIds.add((Long) ref.getProperty(Constants.SERVICE_ID))) {
+            return;
+        }
+        String componentName = (String) ref.getProperty("component.name");
+        T application = bundleContext.getService(ref);
+        if(application == null) {
+            return;
+        }
+        waiting.incrementAndGet();
+        executor.execute(() -> {
+            CompletionStage<Integer> stage;
+            try {
+                try {
+                    frameworkService.awaitWarmup();
+                    frameworkService.applicationStarting(componentName);
+                } finally {
+                    started();
+                }
+                stage = runner.apply(application);
+            } catch(Exception ex) {
+                CompletableFuture<Integer> failed = new CompletableFuture<>();
+                failed.completeExceptionally(ex);
+                stage = failed;
+            }
+            stage.whenComplete((exitCode, throwable) -> {
+                int result;
+                if(throwable != null) {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ?
+                            throwable.getCause() : throwable;
+                    log.log(Level.SEVERE, cause, () -> String.format("Application '%s' failed", componentName));
+                    result = 1;
+                } else {
+                    result = exitCode == null ? 0 : exitCode;
+                }
+                try {
+                    bundleContext.ungetService(ref);
+                } catch (IllegalStateException ise) {
+                    // the bundle context is no longer valid once the framework has stopped
+                }
+                complete(() -> frameworkService.applicationCompleted(componentName, result));
+            });
+        });
+    }
+
+    private void started() {
+        List<Runnable> ready;
+        synchronized(deferredCompletions) {
+            if(waiting.decrementAndGet() > 0) {
+                return;
+            }
+            ready = new ArrayList<>(deferredCompletions);
+            deferredCompletions.clear();
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    private void complete(Runnable completion) {
+        synchronized(deferredCompletions) {
+            if(waiting.get() > 0) {
+                deferredCompletions.add(completion);
+                return;
+            }
+        }
+        completion.run();
+    }
+
+    @Deactivate
+    void deactivate() {
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
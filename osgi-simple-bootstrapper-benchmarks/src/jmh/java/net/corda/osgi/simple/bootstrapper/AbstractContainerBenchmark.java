@@ -0,0 +1,92 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Common setup of the benchmarks that run a {@link Container} over a {@link SyntheticBundleSet},
+ * every invocation measures a single cold run of one of the startup phases
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public abstract class AbstractContainerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int bundleCount;
+
+    protected SyntheticBundleSet bundleSet;
+
+    protected Container container;
+
+    // values of the system properties overridden by settings(), null for the ones that were not set
+    private final Map<String, String> previousSettings = new HashMap<>();
+
+    protected abstract SyntheticBundleSet generate();
+
+    /**
+     * Bootstrapper settings applied as system properties for the duration of the trial
+     */
+    protected Map<String, String> settings() {
+        return Collections.emptyMap();
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        // the framework logs every start and stop at INFO level
+        Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+        for(Map.Entry<String, String> entry : settings().entrySet()) {
+            previousSettings.put(entry.getKey(), System.getProperty(entry.getKey()));
+            System.setProperty(entry.getKey(), entry.getValue());
+        }
+        bundleSet = generate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        try {
+            bundleSet.close();
+        } finally {
+            for(Map.Entry<String, String> entry : previousSettings.entrySet()) {
+                if(entry.getValue() == null) {
+                    System.clearProperty(entry.getKey());
+                } else {
+                    System.setProperty(entry.getKey(), entry.getValue());
+                }
+            }
+            previousSettings.clear();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeContainer() {
+        if(container != null) {
+            container.close();
+            container = null;
+        }
+    }
+
+    protected Container newContainer() {
+        return new Container(new String[0], bundleSet.getResourceLoader());
+    }
+}
@@ -0,0 +1,42 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Measures {@link Container#activate(long...)} over dependency graphs of different shapes
+ */
+public class ActivationBenchmark extends AbstractContainerBenchmark {
+
+    @Param({"FLAT", "CHAIN", "TREE", "LAYERED"})
+    public SyntheticBundleSet.Shape shape;
+
+    @Param({"1", "4"})
+    public int activationThreads;
+
+    @Override
+    protected Map<String, String> settings() {
+        return Collections.singletonMap(BootstrapperSettings.ACTIVATION_THREADS, Integer.toString(activationThreads));
+    }
+
+    @Override
+    protected SyntheticBundleSet generate() {
+        return SyntheticBundleSet.generate(bundleCount, shape, false);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        container = newContainer();
+        container.start();
+    }
+
+    @Benchmark
+    public void activate() {
+        container.activate();
+    }
+}
@@ -0,0 +1,38 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Measures {@link Container#start()}, that initializes the framework and installs all the bundles
+ */
+public class BundleInstallBenchmark extends AbstractContainerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean parallelInstall;
+
+    @Override
+    protected Map<String, String> settings() {
+        return Collections.singletonMap(BootstrapperSettings.PARALLEL_INSTALL, Boolean.toString(parallelInstall));
+    }
+
+    @Override
+    protected SyntheticBundleSet generate() {
+        return SyntheticBundleSet.generate(bundleCount, SyntheticBundleSet.Shape.FLAT, false);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        container = newContainer();
+    }
+
+    @Benchmark
+    public void install() {
+        container.start();
+    }
+}
@@ -0,0 +1,32 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Measures the construction of a {@link Container}: configuration loading, storage setup and framework creation
+ */
+public class ContainerConstructionBenchmark extends AbstractContainerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean persistentCache;
+
+    @Override
+    protected Map<String, String> settings() {
+        return Collections.singletonMap(BootstrapperSettings.PERSISTENT_CACHE, Boolean.toString(persistentCache));
+    }
+
+    @Override
+    protected SyntheticBundleSet generate() {
+        return SyntheticBundleSet.generate(bundleCount, SyntheticBundleSet.Shape.FLAT, false);
+    }
+
+    @Benchmark
+    public Container construct() {
+        container = newContainer();
+        return container;
+    }
+}
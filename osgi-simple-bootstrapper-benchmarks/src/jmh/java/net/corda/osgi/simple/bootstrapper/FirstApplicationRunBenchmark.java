@@ -0,0 +1,27 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import net.corda.osgi.simple.bootstrapper.benchmarks.BenchmarkApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the time from the construction of the {@link Container} to the first call
+ * of the Main-Application-Component, the same path taken by {@link Bootstrapper#main(String[])}
+ */
+public class FirstApplicationRunBenchmark extends AbstractContainerBenchmark {
+
+    @Override
+    protected SyntheticBundleSet generate() {
+        return SyntheticBundleSet.generate(bundleCount, SyntheticBundleSet.Shape.LAYERED, true);
+    }
+
+    @Benchmark
+    public void firstRun() throws InterruptedException {
+        CountDownLatch latch = BenchmarkApplication.reset();
+        container = newContainer();
+        container.start();
+        container.activate();
+        latch.await();
+    }
+}
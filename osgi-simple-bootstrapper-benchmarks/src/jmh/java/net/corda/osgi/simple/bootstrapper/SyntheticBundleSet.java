@@ -0,0 +1,195 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import net.corda.osgi.simple.bootstrapper.benchmarks.BenchmarkApplication;
+import net.corda.osgi.simple.bootstrapper.benchmarks.NoopActivator;
+import org.osgi.framework.Constants;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates a directory laid out like the application jar built by the plugin, with {@code META-INF/bundle_list},
+ * {@code META-INF/system_packages} and a set of synthetic bundles wired to each other according to a {@link Shape}.
+ * Every synthetic bundle exports one package, imports the packages of its providers and has a no-op activator.
+ */
+final class SyntheticBundleSet implements Closeable {
+
+    /**
+     * Paths of the bundles needed to run {@link BenchmarkApplication}, set by the build
+     */
+    static final String APPLICATION_BUNDLES_PROPERTY = "net.corda.osgi.bootstrapper.benchmarks.bundles";
+
+    static final String APPLICATION_COMPONENT_NAME = "benchmark.application";
+
+    private static final String BENCHMARKS_PACKAGE = BenchmarkApplication.class.getPackage().getName();
+    private static final String API_PACKAGE = "net.corda.osgi.simple.bootstrapper.api";
+    private static final int PAYLOAD_SIZE = 0x4000;
+
+    enum Shape {
+        // no bundle depends on any other
+        FLAT,
+        // every bundle depends on the previous one
+        CHAIN,
+        // every bundle depends on its parent in a binary tree
+        TREE,
+        // bundles are arranged in layers of about sqrt(n) bundles, each one depends on 3 bundles of the previous layer
+        LAYERED;
+
+        List<Integer> providers(int index, int bundleCount) {
+            switch (this) {
+                case FLAT:
+                    return Collections.emptyList();
+                case CHAIN:
+                    return index == 0 ? Collections.emptyList() : Collections.singletonList(index - 1);
+                case TREE:
+                    return index == 0 ? Collections.emptyList() : Collections.singletonList((index - 1) / 2);
+                case LAYERED:
+                    int width = Math.max(1, (int) Math.sqrt(bundleCount));
+                    int layer = index / width;
+                    if(layer == 0) {
+                        return Collections.emptyList();
+                    }
+                    return Stream.of(0, 1, 2)
+                            .map(i -> (layer - 1) * width + (index + i) % width)
+                            .distinct()
+                            .collect(Collectors.toList());
+                default:
+                    throw new IllegalStateException(name());
+            }
+        }
+    }
+
+    private final Path root;
+    private final URLClassLoader resourceLoader;
+
+    private SyntheticBundleSet(Path root) throws IOException {
+        this.root = root;
+        this.resourceLoader = new URLClassLoader(new URL[] {root.toUri().toURL()}, null);
+    }
+
+    /**
+     * Class loader that exposes the generated files to {@link Container}
+     */
+    ClassLoader getResourceLoader() {
+        return resourceLoader;
+    }
+
+    static SyntheticBundleSet generate(int bundleCount, Shape shape, boolean withApplication) {
+        try {
+            Path root = Files.createTempDirectory("osgi-benchmark");
+            Path bundlesDir = Files.createDirectories(root.resolve("bundles"));
+            Path metaInf = Files.createDirectories(root.resolve("META-INF"));
+            List<String> bundleList = new ArrayList<>();
+            Random random = new Random(bundleCount);
+            for(int i = 0; i < bundleCount; i++) {
+                List<String> imports = new ArrayList<>();
+                imports.add(BENCHMARKS_PACKAGE);
+                for(int provider : shape.providers(i, bundleCount)) {
+                    imports.add(packageName(provider) + ";version=\"[1.0,2)\"");
+                }
+                Manifest manifest = manifest("benchmark.bundle." + i);
+                Attributes attributes = manifest.getMainAttributes();
+                attributes.putValue(Constants.EXPORT_PACKAGE, packageName(i) + ";version=1.0.0");
+                attributes.putValue(Constants.IMPORT_PACKAGE, String.join(",", imports));
+                attributes.putValue(Constants.BUNDLE_ACTIVATOR, NoopActivator.class.getName());
+                byte[] payload = new byte[PAYLOAD_SIZE];
+                random.nextBytes(payload);
+                String fileName = String.format("benchmark-bundle-%04d.jar", i);
+                writeJar(bundlesDir.resolve(fileName), manifest,
+                        packageName(i).replace('.', '/') + "/payload.bin", payload);
+                bundleList.add("bundles/" + fileName);
+            }
+            Manifest rootManifest = new Manifest();
+            rootManifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            if(withApplication) {
+                for(Path bundle : applicationBundles()) {
+                    Files.copy(bundle, bundlesDir.resolve(bundle.getFileName()));
+                    bundleList.add("bundles/" + bundle.getFileName());
+                }
+                Manifest manifest = manifest("benchmark.application");
+                Attributes attributes = manifest.getMainAttributes();
+                attributes.putValue(Constants.IMPORT_PACKAGE, API_PACKAGE + "," + BENCHMARKS_PACKAGE);
+                attributes.putValue("Service-Component", "OSGI-INF/application.xml");
+                String component = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<scr:component xmlns:scr=\"http://www.osgi.org/xmlns/scr/v1.3.0\" name=\"" + APPLICATION_COMPONENT_NAME + "\">\n" +
+                        "  <implementation class=\"" + BenchmarkApplication.class.getName() + "\"/>\n" +
+                        "  <service>\n" +
+                        "    <provide interface=\"" + API_PACKAGE + ".Application\"/>\n" +
+                        "  </service>\n" +
+                        "</scr:component>\n";
+                writeJar(bundlesDir.resolve("benchmark-application.jar"), manifest,
+                        "OSGI-INF/application.xml", component.getBytes(StandardCharsets.UTF_8));
+                bundleList.add("bundles/benchmark-application.jar");
+                rootManifest.getMainAttributes().putValue("Main-Application-Component", APPLICATION_COMPONENT_NAME);
+            }
+            Files.write(metaInf.resolve("bundle_list"), bundleList);
+            Files.write(metaInf.resolve("system_packages"), Arrays.asList(API_PACKAGE, BENCHMARKS_PACKAGE));
+            try(OutputStream outputStream = Files.newOutputStream(root.resolve(JarFile.MANIFEST_NAME))) {
+                rootManifest.write(outputStream);
+            }
+            return new SyntheticBundleSet(root);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static String packageName(int index) {
+        return "benchmark.bundle" + index;
+    }
+
+    private static Manifest manifest(String symbolicName) {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+        attributes.putValue(Constants.BUNDLE_VERSION, "1.0.0");
+        return manifest;
+    }
+
+    private static void writeJar(Path destination, Manifest manifest, String entryName, byte[] content) throws IOException {
+        try(JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(destination), manifest)) {
+            jarOutputStream.putNextEntry(new JarEntry(entryName));
+            jarOutputStream.write(content);
+            jarOutputStream.closeEntry();
+        }
+    }
+
+    private static List<Path> applicationBundles() {
+        String bundles = System.getProperty(APPLICATION_BUNDLES_PROPERTY);
+        if(bundles == null) {
+            throw new IllegalStateException(String.format("System property '%s' is not set", APPLICATION_BUNDLES_PROPERTY));
+        }
+        return Stream.of(bundles.split(File.pathSeparator))
+                .filter(it -> !it.isEmpty())
+                .map(Paths::get)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() throws IOException {
+        resourceLoader.close();
+        BundleStorage.deleteRecursively(root);
+    }
+}
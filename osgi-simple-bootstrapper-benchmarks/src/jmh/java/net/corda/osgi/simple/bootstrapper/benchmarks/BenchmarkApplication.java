@@ -0,0 +1,28 @@
+package net.corda.osgi.simple.bootstrapper.benchmarks;
+
+import net.corda.osgi.simple.bootstrapper.api.Application;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Main application component of the synthetic bundle sets, it only signals that it has been run
+ */
+public class BenchmarkApplication implements Application {
+
+    private static volatile CountDownLatch latch = new CountDownLatch(1);
+
+    /**
+     * Resets the signal before a new run of the container
+     */
+    public static CountDownLatch reset() {
+        CountDownLatch result = new CountDownLatch(1);
+        latch = result;
+        return result;
+    }
+
+    @Override
+    public int run(String[] args) {
+        latch.countDown();
+        return 0;
+    }
+}
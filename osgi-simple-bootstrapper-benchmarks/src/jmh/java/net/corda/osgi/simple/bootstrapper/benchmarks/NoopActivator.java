@@ -0,0 +1,18 @@
+package net.corda.osgi.simple.bootstrapper.benchmarks;
+
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Activator shared by all the synthetic bundles, it is loaded from the system bundle
+ */
+public class NoopActivator implements BundleActivator {
+
+    @Override
+    public void start(BundleContext context) {
+    }
+
+    @Override
+    public void stop(BundleContext context) {
+    }
+}
@@ -0,0 +1,357 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Starts bundles concurrently on a bounded pool, a bundle is only started once all the bundles
+ * it is wired to have been started. Bundles are processed one start level at a time
+ * and bundles that belong to the same wiring cycle are started serially in id order.
+ * The dependencies of a bundle are taken from its actual wiring, which reflects the optional imports, the fragments
+ * and the uses constraints as resolved by the framework, the wiring hints computed at build time only stand in for
+ * the bundles the framework could not resolve. Bundles are stopped the other way round:
+ * a bundle is only stopped once all the bundles wired to it have been stopped.
+ */
+@RequiredArgsConstructor
+final class ActivationScheduler {
+    private static final Logger log = Logger.getLogger(ActivationScheduler.class.getName());
+
+    private final Framework framework;
+
+    private final int threads;
+
+    private final Map<Bundle, Set<Bundle>> wiringHints;
+
+    ActivationScheduler(Framework framework, Map<Bundle, Set<Bundle>> wiringHints) {
+        this(framework, BootstrapperSettings.getInt(BootstrapperSettings.ACTIVATION_THREADS,
+                Runtime.getRuntime().availableProcessors()), wiringHints);
+    }
+
+    ActivationScheduler(Framework framework) {
+        this(framework, Collections.emptyMap());
+    }
+
+    static boolean isFragment(Bundle bundle) {
+        return bundle.getHeaders().get(Constants.FRAGMENT_HOST) != null;
+    }
+
+    static final class Node {
+        final List<Bundle> bundles = new ArrayList<>();
+        final Set<Node> dependents = new LinkedHashSet<>();
+        final AtomicInteger pendingDependencies = new AtomicInteger();
+    }
+
+    void start(Collection<Bundle> bundles) {
+        start(bundles, 0);
+    }
+
+    /**
+     * @param options the options passed to {@link Bundle#start(int)}
+     */
+    @SneakyThrows
+    void start(Collection<Bundle> bundles, int options) {
+        if(threads <= 1) {
+            for(Bundle bundle : sortById(bundles)) {
+                if(!isFrameworkRunning()) {
+                    break;
+                }
+                start(bundle, options);
+            }
+            return;
+        }
+        try(StartupTimeline.Span span = StartupTimeline.get().begin("resolve")) {
+            framework.adapt(FrameworkWiring.class).resolveBundles(bundles);
+        }
+        TreeMap<Integer, List<Bundle>> byStartLevel = new TreeMap<>();
+        for(Bundle bundle : bundles) {
+            int startLevel = bundle.adapt(BundleStartLevel.class).getStartLevel();
+            byStartLevel.computeIfAbsent(startLevel, k -> new ArrayList<>()).add(bundle);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("bundle-activator"));
+        try {
+            for(Map.Entry<Integer, List<Bundle>> entry : byStartLevel.entrySet()) {
+                log.fine(() -> String.format("Starting %d bundles of start level %d on %d threads",
+                        entry.getValue().size(), entry.getKey(), threads));
+                run(buildGraph(entry.getValue()), executor, options);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static String bundleName(Bundle bundle) {
+        return bundle.getSymbolicName() + "-" + bundle.getVersion();
+    }
+
+    private static void start(Bundle bundle, int options) throws BundleException {
+        try(StartupTimeline.Span span = StartupTimeline.get().begin("start", bundleName(bundle))) {
+            bundle.start(options);
+        }
+    }
+
+    // the framework might have been stopped by an application that has already terminated
+    private boolean isFrameworkRunning() {
+        return (framework.getState() & (Bundle.STARTING | Bundle.ACTIVE)) != 0;
+    }
+
+    private static List<Bundle> sortById(Collection<Bundle> bundles) {
+        List<Bundle> result = new ArrayList<>(bundles);
+        result.sort(Comparator.comparingLong(Bundle::getBundleId));
+        return result;
+    }
+
+    /**
+     * Builds the graph of the strongly connected components of the wiring between {@code bundles}
+     */
+    Collection<Node> buildGraph(List<Bundle> bundles) {
+        Set<Bundle> members = new HashSet<>(bundles);
+        Map<Bundle, Set<Bundle>> providers = new HashMap<>();
+        for(Bundle bundle : sortById(bundles)) {
+            Set<Bundle> bundleProviders = new LinkedHashSet<>();
+            BundleWiring wiring = bundle.adapt(BundleWiring.class);
+            if(wiring != null) {
+                for(BundleWire wire : wiring.getRequiredWires(null)) {
+                    Bundle provider = wire.getProvider().getBundle();
+                    if(provider != bundle && members.contains(provider)) {
+                        bundleProviders.add(provider);
+                    }
+                }
+            } else {
+                Set<Bundle> hints = wiringHints.get(bundle);
+                if(hints != null) {
+                    log.fine(() -> String.format("Bundle '%s' is not resolved, ordering it from the wiring computed at build time",
+                            bundleName(bundle)));
+                    for(Bundle provider : hints) {
+                        if(provider != bundle && members.contains(provider)) {
+                            bundleProviders.add(provider);
+                        }
+                    }
+                }
+            }
+            providers.put(bundle, bundleProviders);
+        }
+        Map<Bundle, Node> components = new Tarjan(providers).run();
+        Set<Node> result = new LinkedHashSet<>(components.values());
+        for(Map.Entry<Bundle, Set<Bundle>> entry : providers.entrySet()) {
+            Node node = components.get(entry.getKey());
+            for(Bundle provider : entry.getValue()) {
+                Node providerNode = components.get(provider);
+                if(providerNode != node && providerNode.dependents.add(node)) {
+                    node.pendingDependencies.incrementAndGet();
+                }
+            }
+        }
+        for(Node node : result) {
+            node.bundles.sort(Comparator.comparingLong(Bundle::getBundleId));
+        }
+        return result;
+    }
+
+    /**
+     * Stops {@code bundles} transiently, giving up at {@code deadline} (in {@link System#nanoTime()} terms).
+     * Once the deadline has passed no other bundle is stopped, the activators already running their
+     * {@link org.osgi.framework.BundleActivator#stop} are left to complete on their daemon threads rather than
+     * interrupted halfway. The framework then goes on stopping the remaining bundles itself, while the container
+     * stops waiting for it at the same deadline and lets the process exit
+     * @return the bundles that have not been stopped
+     */
+    @SneakyThrows
+    List<Bundle> stop(Collection<Bundle> bundles, long deadline) {
+        Collection<Node> nodes = buildGraph(new ArrayList<>(bundles));
+        // the dependents of a component have to be stopped before the component itself
+        Map<Node, Set<Node>> providers = new HashMap<>();
+        Map<Node, AtomicInteger> pendingDependents = new HashMap<>();
+        for(Node node : nodes) {
+            pendingDependents.put(node, new AtomicInteger(node.dependents.size()));
+            for(Node dependent : node.dependents) {
+                providers.computeIfAbsent(dependent, k -> new LinkedHashSet<>()).add(node);
+            }
+        }
+        Set<Bundle> pending = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        pending.addAll(bundles);
+        List<StartupTimeline.Span> spans = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new NamedThreadFactory("bundle-stopper"));
+        CountDownLatch latch = new CountDownLatch(nodes.size());
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        try {
+            for(Node node : nodes) {
+                if(node.dependents.isEmpty()) {
+                    submitStop(node, executor, latch, providers, pendingDependents, pending, spans, abandoned);
+                }
+            }
+            if(!latch.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                abandoned.set(true);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        log.fine(() -> {
+            List<StartupTimeline.Span> slowest = new ArrayList<>(spans);
+            slowest.sort(Comparator.comparingLong(StartupTimeline.Span::getDurationNanos).reversed());
+            return String.format("Stopped %d bundles, slowest: %s", spans.size(), slowest.stream()
+                    .limit(5)
+                    .map(it -> String.format("%s (%d ms)", it.getSubject(), TimeUnit.NANOSECONDS.toMillis(it.getDurationNanos())))
+                    .collect(Collectors.joining(", ")));
+        });
+        return sortById(pending);
+    }
+
+    private void submitStop(Node node, ExecutorService executor, CountDownLatch latch,
+                            Map<Node, Set<Node>> providers,
+                            Map<Node, AtomicInteger> pendingDependents,
+                            Set<Bundle> pending,
+                            List<StartupTimeline.Span> spans,
+                            AtomicBoolean abandoned) {
+        Runnable task = () -> {
+            try {
+                // the members of a cycle are stopped in the reverse order of their start
+                for(int i = node.bundles.size() - 1; i >= 0 && !abandoned.get(); i--) {
+                    Bundle bundle = node.bundles.get(i);
+                    StartupTimeline.Span span = StartupTimeline.get().begin("stop", bundleName(bundle));
+                    try {
+                        bundle.stop(Bundle.STOP_TRANSIENT);
+                    } catch (BundleException | IllegalStateException ex) {
+                        log.log(Level.WARNING, ex, () -> String.format("Error stopping bundle '%s'", bundleName(bundle)));
+                    } finally {
+                        span.close();
+                        spans.add(span);
+                        pending.remove(bundle);
+                    }
+                    log.fine(() -> String.format("Stopped bundle '%s' in %d ms", bundleName(bundle),
+                            TimeUnit.NANOSECONDS.toMillis(span.getDurationNanos())));
+                }
+            } finally {
+                for(Node provider : providers.getOrDefault(node, Collections.emptySet())) {
+                    if(pendingDependents.get(provider).decrementAndGet() == 0 && !abandoned.get()) {
+                        submitStop(provider, executor, latch, providers, pendingDependents, pending, spans, abandoned);
+                    }
+                }
+                latch.countDown();
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // the deadline has passed in the meantime
+        }
+    }
+
+    @SneakyThrows
+    private void run(Collection<Node> nodes, ExecutorService executor, int options) {
+        CountDownLatch latch = new CountDownLatch(nodes.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for(Node node : nodes) {
+            if(node.pendingDependencies.get() == 0) {
+                submit(node, executor, latch, failure, options);
+            }
+        }
+        latch.await();
+        Throwable t = failure.get();
+        if(t != null) {
+            throw t;
+        }
+    }
+
+    private void submit(Node node, ExecutorService executor, CountDownLatch latch, AtomicReference<Throwable> failure, int options) {
+        executor.execute(() -> {
+            try {
+                for(Bundle bundle : node.bundles) {
+                    if(failure.get() != null || !isFrameworkRunning()) {
+                        break;
+                    }
+                    start(bundle, options);
+                }
+            } catch (Throwable t) {
+                if(!failure.compareAndSet(null, t)) {
+                    failure.get().addSuppressed(t);
+                }
+            } finally {
+                for(Node dependent : node.dependents) {
+                    if(dependent.pendingDependencies.decrementAndGet() == 0) {
+                        submit(dependent, executor, latch, failure, options);
+                    }
+                }
+                latch.countDown();
+            }
+        });
+    }
+
+    /**
+     * Tarjan's strongly connected components algorithm, maps each bundle to its component
+     */
+    @RequiredArgsConstructor
+    private static final class Tarjan {
+        private final Map<Bundle, Set<Bundle>> edges;
+        private final Map<Bundle, Integer> index = new HashMap<>();
+        private final Map<Bundle, Integer> lowLink = new HashMap<>();
+        private final List<Bundle> stack = new ArrayList<>();
+        private final Set<Bundle> onStack = new LinkedHashSet<>();
+        private final Map<Bundle, Node> result = new HashMap<>();
+
+        Map<Bundle, Node> run() {
+            for(Bundle bundle : edges.keySet()) {
+                if(!index.containsKey(bundle)) {
+                    visit(bundle);
+                }
+            }
+            return result;
+        }
+
+        private void visit(Bundle bundle) {
+            index.put(bundle, index.size());
+            lowLink.put(bundle, index.get(bundle));
+            stack.add(bundle);
+            onStack.add(bundle);
+            for(Bundle provider : edges.get(bundle)) {
+                if(!index.containsKey(provider)) {
+                    visit(provider);
+                    lowLink.put(bundle, Math.min(lowLink.get(bundle), lowLink.get(provider)));
+                } else if(onStack.contains(provider)) {
+                    lowLink.put(bundle, Math.min(lowLink.get(bundle), index.get(provider)));
+                }
+            }
+            if(lowLink.get(bundle).equals(index.get(bundle))) {
+                Node node = new Node();
+                Bundle member;
+                do {
+                    member = stack.remove(stack.size() - 1);
+                    onStack.remove(member);
+                    node.bundles.add(member);
+                    result.put(member, node);
+                } while(member != bundle);
+            }
+        }
+    }
+}
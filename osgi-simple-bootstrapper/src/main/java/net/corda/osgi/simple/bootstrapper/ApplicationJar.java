@@ -0,0 +1,315 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * The jar file the bootstrapper has been launched from. Its central directory is read once
+ * so that entries can be looked up by name without scanning the classpath, entries written
+ * with the STORED method are accessed from a memory mapped view of the file,
+ * without going through an {@link java.util.zip.Inflater} or any intermediate copy.
+ */
+final class ApplicationJar {
+    private static final Logger log = Logger.getLogger(ApplicationJar.class.getName());
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    @Getter
+    @RequiredArgsConstructor
+    static final class Entry {
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+    }
+
+    private static volatile Optional<ApplicationJar> instance;
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final URL location;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+    private MappedByteBuffer mapping;
+
+    private ApplicationJar(Path path, URL location, FileChannel channel, Map<String, Entry> entries) {
+        this.path = path;
+        this.location = location;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * @return the jar the bootstrapper classes have been loaded from,
+     * empty when they come from a directory or from a jar that cannot be read
+     */
+    static Optional<ApplicationJar> get() {
+        Optional<ApplicationJar> result = instance;
+        if(result == null) {
+            synchronized (ApplicationJar.class) {
+                result = instance;
+                if(result == null) {
+                    result = open();
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Optional<ApplicationJar> open() {
+        try {
+            CodeSource codeSource = ApplicationJar.class.getProtectionDomain().getCodeSource();
+            if(codeSource == null || !"file".equals(codeSource.getLocation().getProtocol())) {
+                return Optional.empty();
+            }
+            Path path = Paths.get(codeSource.getLocation().toURI());
+            if(!Files.isRegularFile(path)) {
+                return Optional.empty();
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            Map<String, Entry> entries = readCentralDirectory(channel);
+            if(entries == null) {
+                channel.close();
+                return Optional.empty();
+            }
+            return Optional.of(new ApplicationJar(path, codeSource.getLocation(), channel, entries));
+        } catch (Exception ex) {
+            log.log(Level.FINE, ex, () -> "Unable to read the central directory of the application jar");
+            return Optional.empty();
+        }
+    }
+
+    Optional<Entry> getEntry(String name) {
+        return Optional.ofNullable(entries.get(name));
+    }
+
+    /**
+     * @return the URL of {@code entry}, in the same form the system class loader uses for its resources
+     */
+    @SneakyThrows
+    URL getUrl(Entry entry) {
+        return new URL("jar:" + location + "!/" + entry.getName());
+    }
+
+    /**
+     * @return the entry of this jar {@code url} points to, if any
+     */
+    @SneakyThrows
+    Optional<Entry> getEntry(URL url) {
+        if(!"jar".equals(url.getProtocol())) {
+            return Optional.empty();
+        }
+        String prefix = "jar:" + location + "!/";
+        String spec = url.toString();
+        if(spec.startsWith(prefix)) {
+            return getEntry(spec.substring(prefix.length()));
+        }
+        URLConnection connection = url.openConnection();
+        if(!(connection instanceof JarURLConnection)) {
+            return Optional.empty();
+        }
+        JarURLConnection jarURLConnection = (JarURLConnection) connection;
+        URL jarFileURL = jarURLConnection.getJarFileURL();
+        if(!"file".equals(jarFileURL.getProtocol()) || !Paths.get(jarFileURL.toURI()).equals(path)) {
+            return Optional.empty();
+        }
+        return getEntry(jarURLConnection.getEntryName());
+    }
+
+    /**
+     * @return a read-only view of the content of {@code entry} if it has been stored uncompressed
+     */
+    Optional<ByteBuffer> map(Entry entry) {
+        if(entry.getMethod() != ZipEntry.STORED) {
+            return Optional.empty();
+        }
+        return rawData(entry);
+    }
+
+    /**
+     * @return a stream over the uncompressed content of {@code entry}, empty if its compression method is not supported
+     */
+    @SneakyThrows
+    Optional<InputStream> open(Entry entry) {
+        if(entry.getMethod() == ZipEntry.STORED) {
+            return map(entry).map(ByteBufferInputStream::new);
+        } else if(entry.getMethod() == ZipEntry.DEFLATED) {
+            return rawData(entry).map(data -> {
+                // a nowrap inflater may need an extra dummy byte past the end of the compressed data
+                InputStream compressed = new SequenceInputStream(
+                        new ByteBufferInputStream(data), new ByteArrayInputStream(new byte[1]));
+                return new InflaterInputStream(compressed, new Inflater(true), 0x10000) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                };
+            });
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return a read-only view of the data of {@code entry}, as it is stored in the file
+     */
+    @SneakyThrows
+    private Optional<ByteBuffer> rawData(Entry entry) {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, entry.getLocalHeaderOffset());
+        if(header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            return Optional.empty();
+        }
+        long dataOffset = entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE +
+                Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+        MappedByteBuffer mapping = getMapping();
+        if(mapping != null) {
+            ByteBuffer result = mapping.duplicate();
+            result.position((int) dataOffset);
+            result.limit((int) (dataOffset + entry.getCompressedSize()));
+            return Optional.of(result.slice());
+        } else {
+            return Optional.of(channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.getCompressedSize()));
+        }
+    }
+
+    private synchronized MappedByteBuffer getMapping() throws IOException {
+        if(mapping == null && channel.size() <= Integer.MAX_VALUE) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return mapping;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @return the entries listed in the central directory, null if the file
+     * is not a zip archive or uses ZIP64 extensions
+     */
+    private static Map<String, Entry> readCentralDirectory(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, fileSize - tailSize);
+        int eocd = -1;
+        for(int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if(tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if(eocd < 0) {
+            return null;
+        }
+        long centralDirectorySize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+        long centralDirectoryOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+        if(centralDirectorySize == ZIP64_MAGIC || centralDirectoryOffset == ZIP64_MAGIC) {
+            return null;
+        }
+        ByteBuffer cd = ByteBuffer.allocate((int) centralDirectorySize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, cd, centralDirectoryOffset);
+        Map<String, Entry> result = new HashMap<>();
+        int position = 0;
+        while(position + 46 <= cd.limit() && cd.getInt(position) == CENTRAL_DIRECTORY_SIGNATURE) {
+            int method = Short.toUnsignedInt(cd.getShort(position + 10));
+            long compressedSize = Integer.toUnsignedLong(cd.getInt(position + 20));
+            long size = Integer.toUnsignedLong(cd.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(cd.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(cd.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(cd.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(cd.getInt(position + 42));
+            String name = new String(cd.array(), cd.arrayOffset() + position + 46, nameLength, StandardCharsets.UTF_8);
+            if(compressedSize != ZIP64_MAGIC && size != ZIP64_MAGIC && localHeaderOffset != ZIP64_MAGIC) {
+                result.put(name, new Entry(name, method, compressedSize, size, localHeaderOffset));
+            }
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    /**
+     * Exposes a {@link ByteBuffer} as an {@link InputStream}
+     */
+    static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if(length == 0) {
+                return 0;
+            }
+            if(!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the applications running concurrently and decides, according to an {@link ExitCodePolicy},
+ * when the framework has to be stopped and with which exit code. As applications keep being registered
+ * while bundles are started, the framework is never stopped because all of them have completed
+ * before {@link #activationCompleted()} has been called.
+ */
+@RequiredArgsConstructor
+final class ApplicationMonitor {
+    private static final Logger log = Logger.getLogger(ApplicationMonitor.class.getName());
+
+    private final ExitCodePolicy policy;
+
+    // receives the exit code of the process, called at most once
+    private final IntConsumer stop;
+
+    private int running = 0;
+    private int completed = 0;
+    private int failed = 0;
+    private int maxExitCode = Integer.MIN_VALUE;
+    private Integer firstFailure = null;
+    private boolean activated = false;
+    private boolean stopped = false;
+
+    synchronized void applicationStarting(String componentName) {
+        running++;
+        log.fine(() -> String.format("Application '%s' started, %d running", componentName, running));
+    }
+
+    synchronized void applicationCompleted(String componentName, int exitCode) {
+        running--;
+        completed++;
+        maxExitCode = Math.max(maxExitCode, exitCode);
+        if(exitCode != 0) {
+            failed++;
+            if(firstFailure == null) {
+                firstFailure = exitCode;
+            }
+        }
+        log.info(() -> String.format("Application '%s' completed with exit code %d, %d still running",
+                componentName, exitCode, running));
+        if(policy == ExitCodePolicy.FIRST_FAILURE && exitCode != 0) {
+            stop(exitCode);
+        } else {
+            stopIfAllCompleted();
+        }
+    }
+
+    /**
+     * Called once every bundle has been started
+     */
+    synchronized void activationCompleted() {
+        activated = true;
+        stopIfAllCompleted();
+    }
+
+    private void stopIfAllCompleted() {
+        if(activated && running == 0 && completed > 0) {
+            stop(exitCode());
+        }
+    }
+
+    private int exitCode() {
+        switch (policy) {
+            case FIRST_FAILURE:
+                return firstFailure == null ? 0 : firstFailure;
+            case MAX:
+                return maxExitCode;
+            case ALL:
+                return failed == 0 ? 0 : 1;
+            default:
+                throw new IllegalStateException(policy.name());
+        }
+    }
+
+    private void stop(int exitCode) {
+        if(!stopped) {
+            stopped = true;
+            log.fine(() -> String.format("Stopping the framework with exit code %d (%s)", exitCode, policy));
+            stop.accept(exitCode);
+        }
+    }
+}
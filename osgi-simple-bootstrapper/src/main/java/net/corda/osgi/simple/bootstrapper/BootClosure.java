@@ -0,0 +1,224 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.RequiredArgsConstructor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes the bundles needed to run the Main-Application-Component: the bundle declaring it,
+ * the bundles declaring the components it mandatorily references (transitively), the Declarative Services
+ * runtime, the bundle of the application runner and every bundle these are wired to
+ */
+@RequiredArgsConstructor
+final class BootClosure {
+    private static final Logger log = Logger.getLogger(BootClosure.class.getName());
+
+    static final String APPLICATION_RUNNER_COMPONENT = "net.corda.osgi.simple.bootstrapper.application.ApplicationRunner";
+
+    private static final String SERVICE_COMPONENT_HEADER = "Service-Component";
+    private static final String EXTENDER_NAMESPACE = "osgi.extender";
+    private static final String COMPONENT_EXTENDER = "osgi.component";
+
+    private static final class ComponentDescription {
+        private final Bundle bundle;
+        private String name;
+        private String implementation;
+        private final Set<String> provides = new HashSet<>();
+        private final Set<String> mandatoryReferences = new HashSet<>();
+
+        private ComponentDescription(Bundle bundle, String name) {
+            this.bundle = bundle;
+            this.name = name;
+        }
+    }
+
+    private final Framework framework;
+
+    /**
+     * @return the bundles of {@code bundles} needed to run {@code mainComponentName},
+     * empty if the component or the Declarative Services runtime cannot be found
+     */
+    Optional<Set<Bundle>> compute(Collection<Bundle> bundles, String mainComponentName) {
+        List<ComponentDescription> components = new ArrayList<>();
+        Set<Bundle> seeds = new LinkedHashSet<>();
+        for(Bundle bundle : bundles) {
+            components.addAll(readComponents(bundle));
+            if(isComponentRuntime(bundle)) {
+                seeds.add(bundle);
+            }
+        }
+        if(seeds.isEmpty()) {
+            log.warning("No Declarative Services runtime found among the application bundles");
+            return Optional.empty();
+        }
+        Optional<ComponentDescription> mainComponent = findComponent(components, mainComponentName);
+        if(!mainComponent.isPresent()) {
+            log.warning(() -> String.format("Main application component '%s' not found", mainComponentName));
+            return Optional.empty();
+        }
+        findComponent(components, APPLICATION_RUNNER_COMPONENT).ifPresent(it -> seeds.add(it.bundle));
+
+        // follows the mandatory service references, starting from the main component
+        Set<ComponentDescription> visited = new HashSet<>();
+        Deque<ComponentDescription> queue = new ArrayDeque<>();
+        queue.add(mainComponent.get());
+        while(!queue.isEmpty()) {
+            ComponentDescription component = queue.removeFirst();
+            if(visited.add(component)) {
+                seeds.add(component.bundle);
+                for(String reference : component.mandatoryReferences) {
+                    for(ComponentDescription candidate : components) {
+                        if(candidate.provides.contains(reference)) {
+                            queue.addLast(candidate);
+                        }
+                    }
+                }
+            }
+        }
+
+        // adds everything the selected bundles are wired to
+        framework.adapt(FrameworkWiring.class).resolveBundles(seeds);
+        Set<Bundle> candidates = new HashSet<>(bundles);
+        Set<Bundle> result = new LinkedHashSet<>();
+        Deque<Bundle> bundleQueue = new ArrayDeque<>(seeds);
+        while(!bundleQueue.isEmpty()) {
+            Bundle bundle = bundleQueue.removeFirst();
+            if(candidates.contains(bundle) && result.add(bundle)) {
+                BundleWiring wiring = bundle.adapt(BundleWiring.class);
+                if(wiring != null) {
+                    for(BundleWire wire : wiring.getRequiredWires(null)) {
+                        bundleQueue.addLast(wire.getProvider().getBundle());
+                    }
+                }
+            }
+        }
+        return Optional.of(result);
+    }
+
+    private static Optional<ComponentDescription> findComponent(List<ComponentDescription> components, String name) {
+        return components.stream().filter(it -> name.equals(it.name)).findFirst();
+    }
+
+    private static boolean isComponentRuntime(Bundle bundle) {
+        BundleRevision revision = bundle.adapt(BundleRevision.class);
+        if(revision == null) {
+            return false;
+        }
+        for(BundleCapability capability : revision.getDeclaredCapabilities(EXTENDER_NAMESPACE)) {
+            if(COMPONENT_EXTENDER.equals(capability.getAttributes().get(EXTENDER_NAMESPACE))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the component descriptions listed in the Service-Component header of {@code bundle}
+     */
+    private static List<ComponentDescription> readComponents(Bundle bundle) {
+        String header = bundle.getHeaders("").get(SERVICE_COMPONENT_HEADER);
+        if(header == null) {
+            return Collections.emptyList();
+        }
+        List<ComponentDescription> result = new ArrayList<>();
+        for(String path : header.split(",")) {
+            path = path.trim();
+            if(path.isEmpty()) continue;
+            int separator = path.lastIndexOf('/');
+            String directory = separator < 0 ? "/" : path.substring(0, separator);
+            String filePattern = path.substring(separator + 1);
+            Enumeration<URL> entries;
+            if(filePattern.contains("*")) {
+                entries = bundle.findEntries(directory, filePattern, false);
+            } else {
+                // unlike findEntries, getEntry doesn't make the framework resolve the bundle
+                URL url = bundle.getEntry(path);
+                entries = url == null ? null : Collections.enumeration(Collections.singleton(url));
+            }
+            while(entries != null && entries.hasMoreElements()) {
+                URL entry = entries.nextElement();
+                try {
+                    result.addAll(parse(bundle, entry));
+                } catch (Exception ex) {
+                    log.log(Level.WARNING, ex, () -> String.format("Unable to read component description '%s'", entry));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<ComponentDescription> parse(Bundle bundle, URL url) throws Exception {
+        List<ComponentDescription> result = new ArrayList<>();
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        SAXParser parser = factory.newSAXParser();
+        try(InputStream inputStream = url.openStream()) {
+            parser.parse(inputStream, new DefaultHandler() {
+                private ComponentDescription current;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    switch (localName) {
+                        case "component":
+                            current = new ComponentDescription(bundle, attributes.getValue("name"));
+                            break;
+                        case "implementation":
+                            if(current != null) {
+                                current.implementation = attributes.getValue("class");
+                            }
+                            break;
+                        case "provide":
+                            if(current != null) {
+                                current.provides.add(attributes.getValue("interface"));
+                            }
+                            break;
+                        case "reference":
+                            String cardinality = attributes.getValue("cardinality");
+                            if(current != null && (cardinality == null || cardinality.startsWith("1"))) {
+                                current.mandatoryReferences.add(attributes.getValue("interface"));
+                            }
+                            break;
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    if("component".equals(localName) && current != null) {
+                        // the name of a component defaults to its implementation class
+                        if(current.name == null) {
+                            current.name = current.implementation;
+                        }
+                        result.add(current);
+                        current = null;
+                    }
+                }
+            });
+        }
+        return result;
+    }
+}
@@ -5,32 +5,47 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import net.corda.osgi.simple.bootstrapper.api.FrameworkService;
+import net.corda.osgi.simple.bootstrapper.api.metrics.MetricRegistry;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.framework.launch.Framework;
 import org.osgi.framework.launch.FrameworkFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.lang.instrument.Instrumentation;
 import java.net.URL;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Properties;
+import java.util.Set;
 import java.util.ServiceLoader;
-import java.util.function.Consumer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.logging.Level;
@@ -38,29 +53,6 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-@RequiredArgsConstructor
-enum BundleState {
-    STARTING(Bundle.STARTING, "starting"),
-    INSTALLED(Bundle.INSTALLED, "installed"),
-    STOPPING(Bundle.STOPPING, "stopping"),
-    ACTIVE(Bundle.ACTIVE, "active"),
-    RESOLVED(Bundle.RESOLVED, "resolved"),
-    UNINSTALLED(Bundle.UNINSTALLED, "uninstalled");
-
-    @Getter
-    private final int code;
-
-    @Getter
-    private final String description;
-
-    public static BundleState fromCode(int code) {
-        return Arrays.stream(values())
-                .filter(it -> it.code == code)
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Unknown bundle state with code $code"));
-    }
-}
-
 @RequiredArgsConstructor
 class FrameworkListener implements org.osgi.framework.FrameworkListener {
     private static final Logger log = Logger.getLogger(FrameworkListener.class.getName());
@@ -115,6 +107,9 @@ final class BundleListener implements org.osgi.framework.BundleListener {
     @Override
     public void bundleChanged(BundleEvent evt) {
         Bundle bundle = evt.getBundle();
+        if(evt.getType() == BundleEvent.RESOLVED) {
+            StartupTimeline.get().mark("resolved", ActivationScheduler.bundleName(bundle));
+        }
         log.fine(() -> String.format("Bundle-Location: %s, " +
                         "Bundle ID: %s, Bundle-SymbolicName: %s, Bundle-Version: %s, State: %s",
                 bundle.getLocation(),
@@ -127,10 +122,13 @@ final class BundleListener implements org.osgi.framework.BundleListener {
 
 class Container implements Closeable {
     private static final String BUNDLE_LIST_FILE = "META-INF/bundle_list";
+    private static final String BUNDLE_WIRING_FILE = "META-INF/bundle_wiring";
     private static final String SYSTEM_PACKAGES_FILE = "META-INF/system_packages";
     private static final String SYSTEM_PROPERTIES_FILE = "META-INF/system.properties";
     private static final String FRAMEWORK_PROPERTIES_FILE = "META-INF/framework.properties";
     private static final String MAIN_APPLICATION_COMPONENT_ATTRIBUTE = "Main-Application-Component";
+    // bundles declaring 'false' are not stopped when the shutdown is in fast exit mode
+    private static final String HOLDS_EXTERNAL_RESOURCES_HEADER = "Holds-External-Resources";
 
     private static final Logger log = Logger.getLogger(Container.class.getName());
 
@@ -145,8 +143,8 @@ class Container implements Closeable {
     }
 
     @SneakyThrows
-    private static String loadSystemPackages() {
-        URL resourceUrl = Container.class.getClassLoader().getResource(SYSTEM_PACKAGES_FILE);
+    private String loadSystemPackages() {
+        URL resourceUrl = resourceLoader.getResource(SYSTEM_PACKAGES_FILE);
         if(resourceUrl != null) {
             try(BufferedReader reader = new BufferedReader(new InputStreamReader(resourceUrl.openStream()))) {
                 return reader.lines().collect(Collectors.joining(","));
@@ -157,81 +155,284 @@ class Container implements Closeable {
     }
 
 
+    @SneakyThrows
+    private byte[] readResource(String name) {
+        URL resourceUrl = resourceLoader.getResource(name);
+        if(resourceUrl == null) {
+            return new byte[0];
+        }
+        try(InputStream inputStream = resourceUrl.openStream()) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[0x1000];
+            int read;
+            while((read = inputStream.read(buffer)) >= 0) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    @SneakyThrows
+    private List<String> readLines(String resourceName) {
+        InputStream inputStream = resourceLoader.getResourceAsStream(resourceName);
+        if(inputStream == null) {
+            return Collections.emptyList();
+        }
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the location of each line of {@code bundle_list}: lines starting with {@code reference:} are
+     * locations of bundles used in place, the other ones are names of resources of the application
+     */
+    @SneakyThrows
+    private List<String> listBundles() {
+        if(bundleIndex.isPresent()) {
+            return bundleIndex.get().getItems().stream()
+                    .map(it -> it.getUrl().toString())
+                    .collect(Collectors.toList());
+        }
+        List<String> result = new ArrayList<>();
+        for(String line : readLines(BUNDLE_LIST_FILE)) {
+            if(BundleInstaller.isReference(line)) {
+                result.add(line);
+            } else {
+                Enumeration<URL> it = resourceLoader.getResources(line);
+                while (it.hasMoreElements()) {
+                    result.add(it.nextElement().toString());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the wiring computed at build time, each line of {@code bundle_wiring} holds the index of a bundle
+     * in {@code bundle_list} followed by the indexes of the bundles it is wired to
+     */
+    private Map<Bundle, Set<Bundle>> loadWiringHints(BundleContext ctx) {
+        List<String> bundleList = readLines(BUNDLE_LIST_FILE);
+        List<Bundle> bundles = new ArrayList<>(bundleList.size());
+        for(int i = 0; i < bundleList.size(); i++) {
+            String line = bundleList.get(i);
+            String location;
+            if(bundleIndex.isPresent()) {
+                location = bundleIndex.get().getItems().get(i).getUrl().toString();
+            } else if(BundleInstaller.isReference(line)) {
+                location = line;
+            } else {
+                URL url = resourceLoader.getResource(line);
+                location = url == null ? null : url.toString();
+            }
+            bundles.add(location == null ? null : ctx.getBundle(location));
+        }
+        Map<Bundle, Set<Bundle>> result = new HashMap<>();
+        for(String line : readLines(BUNDLE_WIRING_FILE)) {
+            int separator = line.indexOf(':');
+            Bundle bundle = separator < 0 ? null : bundles.get(Integer.parseInt(line.substring(0, separator)));
+            if(bundle != null) {
+                Set<Bundle> providers = new HashSet<>();
+                for(String index : line.substring(separator + 1).split(",")) {
+                    if(!index.isEmpty()) {
+                        Bundle provider = bundles.get(Integer.parseInt(index));
+                        if(provider != null) {
+                            providers.add(provider);
+                        }
+                    }
+                }
+                result.put(bundle, providers);
+            }
+        }
+        return result;
+    }
+
+    private BundleStorage createStorage(FrameworkFactory frameworkFactory) {
+        if(BootstrapperSettings.getBoolean(BootstrapperSettings.PERSISTENT_CACHE, false)) {
+            Path cacheDirectory = BootstrapperSettings.getString(BootstrapperSettings.CACHE_DIRECTORY)
+                    .map(Paths::get)
+                    .orElseGet(BundleStorage::defaultCacheDirectory);
+            // the digests recorded in the bundle index spare reading the bundles themselves
+            byte[] indexedBundles = bundleIndex.map(index -> index.getItems().stream()
+                    .map(it -> it.getSha256() + " " + BundleStorage.keyOf(it.getUrl()))
+                    .collect(Collectors.joining("\n"))
+                    .getBytes(StandardCharsets.UTF_8)).orElse(new byte[0]);
+            List<URL> bundleUrls = bundleIndex.isPresent() ? Collections.emptyList() : listBundles().stream()
+                    .map(BundleInstaller::contentUrl)
+                    .collect(Collectors.toList());
+            String key = BundleStorage.computeKey(bundleUrls,
+                    indexedBundles,
+                    readResource(BUNDLE_LIST_FILE),
+                    readResource(SYSTEM_PACKAGES_FILE),
+                    readResource(FRAMEWORK_PROPERTIES_FILE),
+                    readResource(frameworkFactory.getClass().getName().replace('.', '/') + ".class"));
+            return BundleStorage.persistent(cacheDirectory, key);
+        } else {
+            return BundleStorage.temporary();
+        }
+    }
+
     private final String[] cliArgs;
-    private final Path storageDir;
+    private final ClassLoader resourceLoader;
+    private final Optional<BundleIndex> bundleIndex;
+    private final BundleStorage storage;
     private final Framework framework;
     private final String mainApplicationComponentName;
 
+    // null unless the applications run concurrently
+    private final ApplicationMonitor applicationMonitor;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final long shutdownTimeout = BootstrapperSettings.getLong(BootstrapperSettings.SHUTDOWN_TIMEOUT, 5000L);
+    private final boolean fastExit = BootstrapperSettings.getBoolean(BootstrapperSettings.SHUTDOWN_FAST_EXIT, false);
+
+    // System.nanoTime() by which the shutdown has to be completed, 0 until the shutdown begins
+    private long shutdownDeadline = 0;
+
+    // counted down once the reports that need the bundles to be running have been written, the shutdown deadline starts then
+    private final CountDownLatch reportsWritten = new CountDownLatch(1);
+
+    // counted down once the bundles have been stopped, the framework might still be stopping
+    private final CountDownLatch bundlesStopped = new CountDownLatch(1);
+
+    private final MetricRegistryImpl metrics = new MetricRegistryImpl();
+    private final FrameworkMetrics frameworkMetrics = new FrameworkMetrics(metrics);
+    private final boolean jmx = BootstrapperSettings.getBoolean(BootstrapperSettings.JMX, true);
+
+    // null unless the Prometheus endpoint is enabled
+    private PrometheusEndpoint prometheusEndpoint;
+
+    // null unless the service profiler is enabled
+    private ServiceProfiler serviceProfiler;
+
+    private ComponentActivationTracker componentActivationTracker;
+
+    // run when the application starts, with boot.mode=closure
+    private final AtomicReference<Runnable> applicationStartingCallback = new AtomicReference<>();
+
     @Getter(AccessLevel.PACKAGE)
     private int exitCode = 0;
 
-    @SneakyThrows
     Container(String[] cliArgs) {
+        this(cliArgs, Container.class.getClassLoader());
+    }
+
+    /**
+     * @param resourceLoader the class loader the bundles and the configuration files in {@code META-INF} are read from
+     */
+    @SneakyThrows
+    Container(String[] cliArgs, ClassLoader resourceLoader) {
         this.cliArgs = cliArgs;
-        this.storageDir = Files.createTempDirectory("osgi-cache");
-        InputStream is = getClass().getClassLoader().getResourceAsStream(SYSTEM_PROPERTIES_FILE);
-        if(is != null) {
-            Properties props = new Properties();
-            try(Reader reader = new InputStreamReader(is)) {
-                props.load(reader);
+        this.resourceLoader = resourceLoader;
+        StartupTimeline timeline = StartupTimeline.get();
+        try(StartupTimeline.Span containerSpan = timeline.begin("container")) {
+            try(StartupTimeline.Span span = timeline.begin("properties", SYSTEM_PROPERTIES_FILE)) {
+                InputStream is = resourceLoader.getResourceAsStream(SYSTEM_PROPERTIES_FILE);
+                if(is != null) {
+                    Properties props = new Properties();
+                    try(Reader reader = new InputStreamReader(is)) {
+                        props.load(reader);
+                    }
+                    props.forEach((key, value) -> System.getProperties().computeIfAbsent(key, k -> value));
+                }
+            }
+            if(BootstrapperSettings.getBoolean(BootstrapperSettings.CLASS_LOADING_PROFILER, false) &&
+                    !ClassLoadingProfiler.get().isPresent()) {
+                log.warning(() -> String.format("'%s' is only honoured on the command line of an application started with -jar",
+                        BootstrapperSettings.CLASS_LOADING_PROFILER));
             }
-            props.forEach((key, value) -> System.getProperties().computeIfAbsent(key, k -> value));
-        }
-
-        Stream<Map.Entry<String,String>> entryStream  = Stream.of(
-                new AbstractMap.SimpleEntry<>(Constants.FRAMEWORK_STORAGE, storageDir.toString()),
-                new AbstractMap.SimpleEntry<>(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT),
-                new AbstractMap.SimpleEntry<>(Constants.FRAMEWORK_SYSTEMPACKAGES_EXTRA, loadSystemPackages())
-        );
-
 
-        is = getClass().getClassLoader().getResourceAsStream(FRAMEWORK_PROPERTIES_FILE);
-        if(is != null) {
-            Properties props = new Properties();
-            try(Reader reader = new InputStreamReader(is)) {
-                props.load(reader);
+            try(StartupTimeline.Span span = timeline.begin("index", BundleIndex.BUNDLE_INDEX_FILE)) {
+                // the index describes the jar the bootstrapper has been loaded from
+                bundleIndex = resourceLoader == Container.class.getClassLoader() ? BundleIndex.load() : Optional.empty();
+            }
+            FrameworkFactory frameworkFactory = getFrameWorkFactory();
+            try(StartupTimeline.Span span = timeline.begin("storage")) {
+                this.storage = createStorage(frameworkFactory);
+            }
+            try {
+                Map<String, String> frameworkPropertyMap;
+                try(StartupTimeline.Span span = timeline.begin("properties", FRAMEWORK_PROPERTIES_FILE)) {
+                    Stream<Map.Entry<String,String>> entryStream  = Stream.of(
+                            new AbstractMap.SimpleEntry<>(Constants.FRAMEWORK_STORAGE, storage.getPath().toString()),
+                            new AbstractMap.SimpleEntry<>(Constants.FRAMEWORK_SYSTEMPACKAGES_EXTRA, loadSystemPackages())
+                    );
+                    if(!storage.isWarm()) {
+                        entryStream = Stream.concat(entryStream, Stream.of(
+                                new AbstractMap.SimpleEntry<>(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT)));
+                    }
+
+                    InputStream is = resourceLoader.getResourceAsStream(FRAMEWORK_PROPERTIES_FILE);
+                    if(is != null) {
+                        Properties props = new Properties();
+                        try(Reader reader = new InputStreamReader(is)) {
+                            props.load(reader);
+                        }
+                        entryStream = Stream.concat(entryStream,
+                                props.entrySet().stream()
+                                        .map(it -> new AbstractMap.SimpleEntry<>((String) it.getKey(),  (String) it.getValue())));
+                    }
+                    entryStream = Stream.concat(entryStream,
+                            System.getProperties().entrySet().stream()
+                                    .map(it -> new AbstractMap.SimpleEntry<>((String) it.getKey(),  (String) it.getValue())));
+                    frameworkPropertyMap = entryStream.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                }
+                try(StartupTimeline.Span span = timeline.begin("framework.new")) {
+                    framework = frameworkFactory.newFramework(frameworkPropertyMap);
+                }
+                Manifest mf = new Manifest();
+                URL manifestURL = resourceLoader.getResource(JarFile.MANIFEST_NAME);
+                if(manifestURL != null) {
+                    mf.read(manifestURL.openStream());
+                }
+                mainApplicationComponentName = mf.getMainAttributes().getValue(MAIN_APPLICATION_COMPONENT_ATTRIBUTE);
+                if(BootstrapperSettings.getBoolean(BootstrapperSettings.CONCURRENT_APPLICATIONS, false)) {
+                    ExitCodePolicy policy = BootstrapperSettings.getEnum(BootstrapperSettings.EXIT_CODE_POLICY,
+                            ExitCodePolicy.class, ExitCodePolicy.FIRST_FAILURE);
+                    applicationMonitor = new ApplicationMonitor(policy, this::stop);
+                } else {
+                    applicationMonitor = null;
+                }
+            } catch (Throwable t) {
+                // the lock of a persistent storage would otherwise be held until the process exits
+                storage.close();
+                throw t;
             }
-            entryStream = Stream.concat(entryStream,
-                    props.entrySet().stream()
-                            .map(it -> new AbstractMap.SimpleEntry<>((String) it.getKey(),  (String) it.getValue())));
-        }
-        entryStream = Stream.concat(entryStream,
-                System.getProperties().entrySet().stream()
-                        .map(it -> new AbstractMap.SimpleEntry<>((String) it.getKey(),  (String) it.getValue())));
-        Map<String, String> frameworkPropertyMap = entryStream.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-        framework = getFrameWorkFactory().newFramework(frameworkPropertyMap);
-        Manifest mf = new Manifest();
-        URL manifestURL = getClass().getClassLoader().getResource(JarFile.MANIFEST_NAME);
-        if(manifestURL != null) {
-            mf.read(manifestURL.openStream());
-        }
-        mainApplicationComponentName = mf.getMainAttributes().getValue(MAIN_APPLICATION_COMPONENT_ATTRIBUTE);
+        }
     }
 
     @SneakyThrows
     void start() {
         log.fine(() -> String.format("Starting OSGi framework %s %s",
                 framework.getClass().getName(), framework.getVersion()));
-        framework.start();
+        StartupTimeline timeline = StartupTimeline.get();
+        try(StartupTimeline.Span span = timeline.begin("framework.init")) {
+            framework.init();
+        }
         framework.getBundleContext().addFrameworkListener(new FrameworkListener(framework));
         framework.getBundleContext().addBundleListener(new BundleListener());
-        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(BUNDLE_LIST_FILE);
+        framework.getBundleContext().addBundleListener((SynchronousBundleListener) evt -> {
+            // delivered on the thread stopping the framework, before the framework stops the bundles itself
+            if(evt.getType() == BundleEvent.STOPPING && evt.getBundle().getBundleId() == 0) {
+                stopBundles();
+            }
+        });
         BundleContext ctx = framework.getBundleContext();
-        try(BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-            reader.lines().forEach(new Consumer<String>() {
-               @Override
-               @SneakyThrows
-               public void accept(String line) {
-                   Enumeration<URL> it = getClass().getClassLoader().getResources(line);
-                   while (it.hasMoreElements()) {
-                       URL url = it.nextElement();
-                       try (InputStream bundleInputStream = url.openStream()) {
-                           ctx.installBundle(url.toString(), bundleInputStream);
-                       }
-                   }
-               }
-           });
+        componentActivationTracker = new ComponentActivationTracker(ctx);
+        componentActivationTracker.register();
+        startMetrics(ctx);
+        if(storage.isWarm()) {
+            log.fine(() -> String.format("Reusing %d bundles from OSGi cache '%s'",
+                    ctx.getBundles().length - 1, storage.getPath()));
+        } else {
+            try(StartupTimeline.Span span = timeline.begin("install.all")) {
+                new BundleInstaller(ctx).install(listBundles());
+            }
+            storage.markReady();
         }
+        WarmupRunner warmupRunner = new WarmupRunner(ctx, metrics);
         ctx.registerService(FrameworkService.class, new FrameworkService() {
             @Override
             public String[] getArgs() {
@@ -247,7 +448,72 @@ class Container implements Closeable {
             public String getMainApplicationComponentName() {
                 return mainApplicationComponentName;
             }
+
+            @Override
+            public boolean isConcurrentApplications() {
+                return applicationMonitor != null;
+            }
+
+            @Override
+            public void awaitWarmup() {
+                warmupRunner.await();
+            }
+
+            @Override
+            public void applicationStarting(String componentName) {
+                // the delayed components activated so far
+                componentActivationTracker.checkAll();
+                timeline.mark("application", componentName);
+                frameworkMetrics.registerStartupPhases(timeline);
+                ClassLoadingProfiler.get().ifPresent(ClassLoadingProfiler::applicationStarting);
+                if(applicationMonitor != null) {
+                    applicationMonitor.applicationStarting(componentName);
+                }
+                Runnable callback = applicationStartingCallback.getAndSet(null);
+                if(callback != null) {
+                    callback.run();
+                }
+            }
+
+            @Override
+            public void applicationCompleted(String componentName, int exitCode) {
+                if(applicationMonitor != null) {
+                    applicationMonitor.applicationCompleted(componentName, exitCode);
+                } else {
+                    Container.this.exitCode = exitCode;
+                }
+            }
         }, null);
+        ctx.registerService(MetricRegistry.class, metrics, null);
+        try(StartupTimeline.Span span = timeline.begin("framework.start")) {
+            framework.start();
+        }
+    }
+
+    private void startMetrics(BundleContext ctx) {
+        frameworkMetrics.register(ctx);
+        if(BootstrapperSettings.getBoolean(BootstrapperSettings.SERVICE_PROFILER, false)) {
+            serviceProfiler = new ServiceProfiler(metrics);
+            serviceProfiler.register(ctx);
+        }
+        if(jmx) {
+            Map<String, Object> mbeans = new LinkedHashMap<>();
+            mbeans.put(MetricsMBean.OBJECT_NAME, new MetricsMBean(metrics));
+            JavaAgentLauncher.getInstrumentation().ifPresent(
+                    instrumentation -> mbeans.put(FootprintMBean.OBJECT_NAME, new FootprintMBean(instrumentation)));
+            MBeans.registerAsync(mbeans);
+        }
+        OptionalInt port = BootstrapperSettings.getString(BootstrapperSettings.METRICS_PROMETHEUS_PORT)
+                .map(it -> OptionalInt.of(Integer.parseInt(it)))
+                .orElse(OptionalInt.empty());
+        if(port.isPresent()) {
+            String host = BootstrapperSettings.getString(BootstrapperSettings.METRICS_PROMETHEUS_HOST).orElse("localhost");
+            try {
+                prometheusEndpoint = new PrometheusEndpoint(metrics, host, port.getAsInt());
+            } catch (IOException ex) {
+                log.log(Level.WARNING, ex, () -> String.format("Unable to serve the metrics on %s:%d", host, port.getAsInt()));
+            }
+        }
     }
 
     @SneakyThrows
@@ -255,39 +521,220 @@ class Container implements Closeable {
         BundleContext ctx = framework.getBundleContext();
 
         if(bundleId.length == 0) {
+            List<Bundle> bundles = new ArrayList<>();
             for(Bundle bundle : ctx.getBundles()) {
-                if(bundle.getHeaders().get(Constants.FRAGMENT_HOST) == null &&
+                if(!ActivationScheduler.isFragment(bundle) &&
                     (bundle.getState() == BundleState.INSTALLED.getCode() || bundle.getState() == BundleState.RESOLVED.getCode())) {
-                    bundle.start();
+                    bundles.add(bundle);
                 }
             }
+            Map<Bundle, Set<Bundle>> wiringHints = loadWiringHints(ctx);
+            boolean closureMode = BootstrapperSettings.getString(BootstrapperSettings.BOOT_MODE)
+                    .map("closure"::equals)
+                    .orElse(false);
+            if(closureMode && mainApplicationComponentName != null && activateClosure(bundles, wiringHints)) {
+                return;
+            }
+            try(StartupTimeline.Span span = StartupTimeline.get().begin("activate")) {
+                new ActivationScheduler(framework, wiringHints).start(bundles);
+            }
         } else {
             for(long id : bundleId) {
                 ctx.getBundle(id).start();
             }
         }
+        activationCompleted();
+    }
+
+    private void activationCompleted() {
+        frameworkMetrics.registerStartupPhases(StartupTimeline.get());
+        if(applicationMonitor != null) {
+            applicationMonitor.activationCompleted();
+        }
+    }
+
+    @SneakyThrows
+    private void stop(int exitCode) {
+        this.exitCode = exitCode;
+        // returns immediately, the framework is stopped on a thread of its own
+        framework.stop();
+    }
+
+    /**
+     * Starts the bundles needed by the Main-Application-Component, the other bundles are started
+     * in the background as soon as the application starts, honouring their activation policy
+     * @return false if the bundles needed by the application could not be determined
+     */
+    private boolean activateClosure(List<Bundle> bundles, Map<Bundle, Set<Bundle>> wiringHints) {
+        StartupTimeline timeline = StartupTimeline.get();
+        Optional<Set<Bundle>> closure;
+        try(StartupTimeline.Span span = timeline.begin("closure", mainApplicationComponentName)) {
+            closure = new BootClosure(framework).compute(bundles, mainApplicationComponentName);
+        }
+        if(!closure.isPresent()) {
+            log.warning("Falling back to eager activation");
+            return false;
+        }
+        List<Bundle> remaining = bundles.stream()
+                .filter(it -> !closure.get().contains(it))
+                .collect(Collectors.toList());
+        log.fine(() -> String.format("Starting %d bundles before '%s', %d bundles afterwards",
+                closure.get().size(), mainApplicationComponentName, remaining.size()));
+        applicationStartingCallback.set(() -> new NamedThreadFactory("background-activation").newThread(() -> {
+            try(StartupTimeline.Span span = timeline.begin("activate.background")) {
+                new ActivationScheduler(framework, wiringHints).start(remaining, Bundle.START_ACTIVATION_POLICY);
+            } catch (Throwable t) {
+                log.log(Level.SEVERE, t, () -> "Error starting the bundles in the background");
+            } finally {
+                activationCompleted();
+            }
+        }).start());
+        try(StartupTimeline.Span span = timeline.begin("activate.closure")) {
+            new ActivationScheduler(framework, wiringHints).start(closure.get());
+        }
+        // the application has not been run while its bundles were starting
+        Runnable callback = applicationStartingCallback.getAndSet(null);
+        if(callback != null) {
+            callback.run();
+        }
+        return true;
+    }
+
+    private synchronized long beginShutdown() {
+        if(shutdownDeadline == 0) {
+            shutdownDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeout);
+        }
+        return shutdownDeadline;
+    }
+
+    // never 0, which means forever to Framework.waitForStop
+    private long millisUntilDeadline() {
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(beginShutdown() - System.nanoTime()));
+    }
+
+    /**
+     * Writes the reports that need the bundles to be running, before the shutdown deadline starts
+     */
+    private void writeShutdownReports() {
+        Optional<Path> footprintReport = BootstrapperSettings.getString(BootstrapperSettings.FOOTPRINT_REPORT).map(Paths::get);
+        if(footprintReport.isPresent()) {
+            // while the classes of the bundles are still loaded
+            Optional<Instrumentation> instrumentation = JavaAgentLauncher.getInstrumentation();
+            if(instrumentation.isPresent()) {
+                try {
+                    FootprintReport.write(instrumentation.get(), footprintReport.get());
+                } catch (Throwable t) {
+                    log.log(Level.WARNING, t, () -> "Error writing the footprint report");
+                }
+            } else {
+                log.warning("The footprint report is only available for applications started with -jar");
+            }
+        }
+        if(serviceProfiler != null) {
+            // while the services are still registered
+            try {
+                serviceProfiler.writeReport(BootstrapperSettings.getString(BootstrapperSettings.SERVICE_PROFILER_REPORT)
+                        .map(Paths::get)
+                        .orElse(null));
+            } catch (Throwable t) {
+                log.log(Level.WARNING, t, () -> "Error writing the service profiler report");
+            }
+        }
+    }
+
+    /**
+     * Stops the bundles in reverse dependency order, in parallel, before the framework stops them one by one.
+     * In fast exit mode the bundles that declare they hold no external resources are left running
+     */
+    private void stopBundles() {
+        try {
+            writeShutdownReports();
+        } finally {
+            reportsWritten.countDown();
+        }
+        long deadline = beginShutdown();
+        try(StartupTimeline.Span span = StartupTimeline.get().begin("stop.all")) {
+            List<Bundle> bundles = new ArrayList<>();
+            for(Bundle bundle : framework.getBundleContext().getBundles()) {
+                if(bundle.getBundleId() != 0 && !ActivationScheduler.isFragment(bundle) &&
+                        (bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE)) != 0 &&
+                        !(fastExit && "false".equalsIgnoreCase(bundle.getHeaders().get(HOLDS_EXTERNAL_RESOURCES_HEADER)))) {
+                    bundles.add(bundle);
+                }
+            }
+            List<Bundle> pending = new ActivationScheduler(framework).stop(bundles, deadline);
+            if(!pending.isEmpty()) {
+                log.warning(() -> String.format("Shutdown deadline of %d ms exceeded, bundles still stopping: %s",
+                        shutdownTimeout, pending.stream().map(ActivationScheduler::bundleName).collect(Collectors.joining(", "))));
+            }
+        } catch (Throwable t) {
+            log.log(Level.SEVERE, t, () -> "Error stopping the bundles");
+        } finally {
+            bundlesStopped.countDown();
+        }
     }
 
     @Override
     @SneakyThrows
     public void close() {
-            if(framework.getState() == BundleState.ACTIVE.getCode() || framework.getState() == BundleState.STARTING.getCode()) {
+        if(framework.getState() == BundleState.ACTIVE.getCode() || framework.getState() == BundleState.STARTING.getCode()) {
             framework.stop();
             waitForStop();
-            Files.walk(storageDir)
-                    .sorted(Comparator.reverseOrder())
-                    .forEach(new Consumer<Path>() {
-                        @Override
-                        @SneakyThrows
-                        public void accept(Path path) {
-                            Files.delete(path);
-                        }
-                    });
+        }
+        // both the shutdown hook and Bootstrapper.main end up here
+        if(closed.compareAndSet(false, true)) {
+            try {
+                if(prometheusEndpoint != null) {
+                    prometheusEndpoint.close();
+                }
+                if(jmx) {
+                    MBeans.unregister(Arrays.asList(MetricsMBean.OBJECT_NAME, FootprintMBean.OBJECT_NAME));
+                }
+                StartupTimeline.get().writeReport();
+                ClassLoadingProfiler.get().ifPresent(profiler -> profiler.writeReport(
+                        BootstrapperSettings.getString(BootstrapperSettings.CLASS_LOADING_PROFILER_REPORT)
+                                .map(Paths::get)
+                                .orElse(null)));
+            } finally {
+                int state = framework.getState();
+                if(state == BundleState.STOPPING.getCode() || state == BundleState.ACTIVE.getCode() || state == BundleState.STARTING.getCode()) {
+                    // fast exit or shutdown timeout, the framework may still be writing to its storage
+                    storage.abandon();
+                } else {
+                    storage.close();
+                }
+            }
         }
     }
 
+    /**
+     * Waits for the end of the shutdown, until the shutdown deadline
+     */
+    @SneakyThrows
     void waitForStop() {
-        waitForStop(5000L);
+        // the deadline starts once the reports written before stopping the bundles are done
+        if(!reportsWritten.await(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+            log.warning("The shutdown reports are taking longer than the shutdown timeout");
+        }
+        awaitShutdown(millisUntilDeadline());
+    }
+
+    /**
+     * Waits for the bundles to be stopped then, unless in fast exit mode, for the framework to stop,
+     * the latter is bounded by the shutdown deadline
+     * @param timeout in milliseconds, 0 waits forever for the shutdown to begin
+     */
+    @SneakyThrows
+    void awaitShutdown(long timeout) {
+        if(timeout == 0) {
+            bundlesStopped.await();
+        } else if(!bundlesStopped.await(timeout, TimeUnit.MILLISECONDS)) {
+            log.warning("OSGi framework shutdown timed out");
+            return;
+        }
+        if(!fastExit) {
+            waitForStop(millisUntilDeadline());
+        }
     }
 
     @SneakyThrows
@@ -317,7 +764,7 @@ public class Bootstrapper {
         try {
             cnt.start();
             cnt.activate();
-            cnt.waitForStop(0L);
+            cnt.awaitShutdown(0L);
         } finally {
             cnt.close();
         }
@@ -0,0 +1,99 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Runtime switches of the bootstrapper, read from the JVM system properties
+ * (which include the content of {@code META-INF/system.properties})
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class BootstrapperSettings {
+
+    private static final String PREFIX = "net.corda.osgi.bootstrapper.";
+
+    // Reuse the framework storage across restarts as long as the embedded bundles don't change
+    static final String PERSISTENT_CACHE = PREFIX + "cache.persistent";
+    // Parent directory of the persistent framework storage, defaults to ${java.io.tmpdir}/osgi-app-cache
+    static final String CACHE_DIRECTORY = PREFIX + "cache.directory";
+    // Read the bundles on a thread pool ahead of their installation, false restores the serial behaviour
+    static final String PARALLEL_INSTALL = PREFIX + "install.parallel";
+    // Size of the bundle installation thread pool, defaults to the number of available processors
+    static final String INSTALL_THREADS = PREFIX + "install.threads";
+    // Number of bundles started concurrently, 1 starts them serially in id order
+    static final String ACTIVATION_THREADS = PREFIX + "activation.threads";
+    // 'closure' starts the bundles needed by the Main-Application-Component first and the others once
+    // the application is running, 'eager' (the default) starts all the bundles before the application
+    static final String BOOT_MODE = PREFIX + "boot.mode";
+    // Run every Application service concurrently instead of the Main-Application-Component only
+    static final String CONCURRENT_APPLICATIONS = PREFIX + "applications.concurrent";
+    // FIRST_FAILURE (the default), MAX or ALL, see ExitCodePolicy
+    static final String EXIT_CODE_POLICY = PREFIX + "applications.exit.policy";
+    // Milliseconds given to the bundles and the framework to stop, 5000 by default
+    static final String SHUTDOWN_TIMEOUT = PREFIX + "shutdown.timeout";
+    // Leave the bundles with a 'Holds-External-Resources: false' header running on exit instead of stopping them
+    static final String SHUTDOWN_FAST_EXIT = PREFIX + "shutdown.fast";
+    // Register the net.corda.osgi.bootstrapper:type=Metrics and, for applications started with -jar,
+    // net.corda.osgi.bootstrapper:type=Footprint MBeans, true by default
+    static final String JMX = PREFIX + "metrics.jmx";
+    // Port of the Prometheus text endpoint, which is disabled unless set
+    static final String METRICS_PROMETHEUS_PORT = PREFIX + "metrics.prometheus.port";
+    // Address the Prometheus text endpoint listens on, localhost by default
+    static final String METRICS_PROMETHEUS_HOST = PREFIX + "metrics.prometheus.host";
+    // Count the service lookups and registrations per bundle and interface, see ServiceProfiler
+    static final String SERVICE_PROFILER = PREFIX + "profiler.services";
+    // File the service profiler report is written to on exit, the report is logged if not set
+    static final String SERVICE_PROFILER_REPORT = PREFIX + "profiler.services.report";
+    // Record the classes loaded by each class loader, see ClassLoadingProfiler. Only honoured on the command line
+    // of an application started with -jar, since the profiler is installed before META-INF/system.properties is loaded
+    static final String CLASS_LOADING_PROFILER = PREFIX + "profiler.classloading";
+    // File the class loading profiler report is written to on exit, the report is logged if not set
+    static final String CLASS_LOADING_PROFILER_REPORT = PREFIX + "profiler.classloading.report";
+    // File the footprint report is written to on exit, for applications started with -jar
+    static final String FOOTPRINT_REPORT = PREFIX + "footprint.report";
+    // Milliseconds given to the Warmup services to complete before the application is run, 10000 by default,
+    // 0 disables the warmups
+    static final String WARMUP_BUDGET = PREFIX + "warmup.budget";
+    // Number of Warmup services run concurrently, defaults to the number of available processors
+    static final String WARMUP_THREADS = PREFIX + "warmup.threads";
+    // Emit the startup phases as JFR events
+    static final String TIMELINE_JFR = PREFIX + "timeline.jfr";
+    // File the startup phases are written to as JSON when the container is closed
+    static final String TIMELINE_REPORT = PREFIX + "timeline.report";
+
+    static Optional<String> getString(String key) {
+        return Optional.ofNullable(System.getProperty(key))
+                .map(String::trim)
+                .filter(it -> !it.isEmpty());
+    }
+
+    static boolean getBoolean(String key, boolean defaultValue) {
+        return getString(key).map(Boolean::parseBoolean).orElse(defaultValue);
+    }
+
+    static int getInt(String key, int defaultValue) {
+        return getString(key).map(Integer::parseInt).orElse(defaultValue);
+    }
+
+    static long getLong(String key, long defaultValue) {
+        return getString(key).map(Long::parseLong).orElse(defaultValue);
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the setting and the accepted values if the value is not one of them
+     */
+    static <E extends Enum<E>> E getEnum(String key, Class<E> enumClass, E defaultValue) {
+        return getString(key).map(value -> {
+            for(E constant : enumClass.getEnumConstants()) {
+                if(constant.name().equalsIgnoreCase(value)) {
+                    return constant;
+                }
+            }
+            throw new IllegalArgumentException(String.format("Invalid value '%s' for '%s', expected one of %s",
+                    value, key, Arrays.toString(enumClass.getEnumConstants())));
+        }).orElse(defaultValue);
+    }
+}
@@ -0,0 +1,74 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * The index of the bundles embedded in the application jar, generated at build time in {@code META-INF/bundle_index}.
+ * Each line holds the SHA-256 digest, the size and the entry name of a bundle, in installation order.
+ * Entries are looked up in the central directory of the application jar, so the cost of locating a bundle
+ * does not depend on the length of the classpath.
+ */
+@RequiredArgsConstructor
+final class BundleIndex {
+    private static final Logger log = Logger.getLogger(BundleIndex.class.getName());
+
+    static final String BUNDLE_INDEX_FILE = "META-INF/bundle_index";
+
+    @Getter
+    @RequiredArgsConstructor
+    static final class Item {
+        private final String sha256;
+        private final long size;
+        private final URL url;
+    }
+
+    @Getter
+    private final List<Item> items;
+
+    /**
+     * @return the index of the application jar, empty if the bootstrapper has not been launched from a jar,
+     * if the jar has no index or if the index doesn't match its content
+     */
+    static Optional<BundleIndex> load() {
+        return ApplicationJar.get().flatMap(BundleIndex::load);
+    }
+
+    @SneakyThrows
+    private static Optional<BundleIndex> load(ApplicationJar jar) {
+        Optional<InputStream> indexStream = jar.getEntry(BUNDLE_INDEX_FILE).flatMap(jar::open);
+        if(!indexStream.isPresent()) {
+            return Optional.empty();
+        }
+        List<Item> items = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(indexStream.get(), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.isEmpty()) continue;
+                String[] fields = line.split(" ", 3);
+                String name = fields[2];
+                long size = Long.parseLong(fields[1]);
+                Optional<ApplicationJar.Entry> entry = jar.getEntry(name);
+                if(!entry.isPresent() || entry.get().getSize() != size) {
+                    log.warning(() -> String.format("Entry '%s' of '%s' doesn't match the bundle index",
+                            name, BUNDLE_INDEX_FILE));
+                    return Optional.empty();
+                }
+                items.add(new Item(fields[0], size, jar.getUrl(entry.get())));
+            }
+        }
+        return Optional.of(new BundleIndex(Collections.unmodifiableList(items)));
+    }
+}
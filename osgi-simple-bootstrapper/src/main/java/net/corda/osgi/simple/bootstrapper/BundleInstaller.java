@@ -0,0 +1,161 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+
+/**
+ * Installs the embedded bundles in the order they appear in {@code META-INF/bundle_list}.
+ * In parallel mode a pool of threads reads and checks the bundles ahead of the installation,
+ * while the framework itself is fed from the calling thread so that bundle ids are the same
+ * as in serial mode. Bundles stored uncompressed in the application jar are read from
+ * a memory mapped view of the jar instead of being inflated. Locations starting with {@code reference:}
+ * are handed over to the framework as they are, so that it uses the bundle in place instead of copying it
+ * into its cache.
+ */
+@RequiredArgsConstructor
+final class BundleInstaller {
+    private static final Logger log = Logger.getLogger(BundleInstaller.class.getName());
+
+    static final String REFERENCE_PREFIX = "reference:";
+
+    private final BundleContext ctx;
+
+    @RequiredArgsConstructor
+    private static final class PreparedBundle {
+        private final String location;
+        // null for referenced bundles
+        private final ByteBuffer content;
+    }
+
+    static boolean isReference(String location) {
+        return location.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * @return the URL the content of the bundle installed from {@code location} is read from
+     */
+    @SneakyThrows
+    static URL contentUrl(String location) {
+        return new URL(isReference(location) ? location.substring(REFERENCE_PREFIX.length()) : location);
+    }
+
+    /**
+     * @return the content of {@code url} if it is an uncompressed entry of the application jar
+     */
+    private static Optional<ByteBuffer> map(URL url) {
+        return ApplicationJar.get().flatMap(jar -> jar.getEntry(url).flatMap(jar::map));
+    }
+
+    /**
+     * Opens {@code url} directly from the application jar when it is one of its entries
+     */
+    @SneakyThrows
+    private static InputStream open(URL url) {
+        Optional<InputStream> inputStream = ApplicationJar.get().flatMap(jar -> jar.getEntry(url).flatMap(jar::open));
+        return inputStream.isPresent() ? inputStream.get() : url.openStream();
+    }
+
+    void install(List<String> locations) {
+        int threads = BootstrapperSettings.getInt(BootstrapperSettings.INSTALL_THREADS,
+                Runtime.getRuntime().availableProcessors());
+        if(BootstrapperSettings.getBoolean(BootstrapperSettings.PARALLEL_INSTALL, true) && threads > 1 && locations.size() > 1) {
+            installParallel(locations, threads);
+        } else {
+            installSerial(locations);
+        }
+    }
+
+    @SneakyThrows
+    private void installSerial(List<String> locations) {
+        for(String location : locations) {
+            try (StartupTimeline.Span span = StartupTimeline.get().begin("install", location)) {
+                if(isReference(location)) {
+                    ctx.installBundle(location);
+                } else {
+                    try(InputStream bundleInputStream = open(new URL(location))) {
+                        ctx.installBundle(location, bundleInputStream);
+                    }
+                }
+            }
+        }
+    }
+
+    @SneakyThrows
+    private void installParallel(List<String> locations, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("bundle-installer"));
+        try {
+            // bounds the number of bundles held in memory while waiting for the framework
+            int window = threads * 2;
+            Deque<Future<PreparedBundle>> pending = new ArrayDeque<>(window);
+            Iterator<String> it = locations.iterator();
+            while(it.hasNext() || !pending.isEmpty()) {
+                while(it.hasNext() && pending.size() < window) {
+                    String location = it.next();
+                    pending.addLast(executor.submit(() -> prepare(location)));
+                }
+                PreparedBundle preparedBundle;
+                try {
+                    preparedBundle = pending.removeFirst().get();
+                } catch (ExecutionException ee) {
+                    throw ee.getCause();
+                }
+                try(StartupTimeline.Span span = StartupTimeline.get().begin("install", preparedBundle.location)) {
+                    if(preparedBundle.content == null) {
+                        ctx.installBundle(preparedBundle.location);
+                    } else {
+                        ctx.installBundle(preparedBundle.location,
+                                new ApplicationJar.ByteBufferInputStream(preparedBundle.content));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static PreparedBundle prepare(String location) throws Exception {
+        if(isReference(location)) {
+            // the framework reads referenced bundles itself
+            return new PreparedBundle(location, null);
+        }
+        URL url = new URL(location);
+        ByteBuffer content = map(url).orElse(null);
+        if(content == null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try(InputStream inputStream = open(url)) {
+                byte[] buffer = new byte[0x10000];
+                int read;
+                while((read = inputStream.read(buffer)) >= 0) {
+                    baos.write(buffer, 0, read);
+                }
+            }
+            content = ByteBuffer.wrap(baos.toByteArray());
+        }
+        try(JarInputStream jarInputStream = new JarInputStream(new ApplicationJar.ByteBufferInputStream(content.duplicate()))) {
+            Manifest manifest = jarInputStream.getManifest();
+            if(manifest == null || manifest.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME) == null) {
+                log.warning(() -> String.format("'%s' doesn't look like an OSGi bundle", url));
+            }
+        }
+        return new PreparedBundle(location, content);
+    }
+}
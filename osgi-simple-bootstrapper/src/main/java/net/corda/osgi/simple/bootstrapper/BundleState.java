@@ -0,0 +1,30 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.osgi.framework.Bundle;
+
+import java.util.Arrays;
+
+@RequiredArgsConstructor
+enum BundleState {
+    STARTING(Bundle.STARTING, "starting"),
+    INSTALLED(Bundle.INSTALLED, "installed"),
+    STOPPING(Bundle.STOPPING, "stopping"),
+    ACTIVE(Bundle.ACTIVE, "active"),
+    RESOLVED(Bundle.RESOLVED, "resolved"),
+    UNINSTALLED(Bundle.UNINSTALLED, "uninstalled");
+
+    @Getter
+    private final int code;
+
+    @Getter
+    private final String description;
+
+    public static BundleState fromCode(int code) {
+        return Arrays.stream(values())
+                .filter(it -> it.code == code)
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown bundle state with code $code"));
+    }
+}
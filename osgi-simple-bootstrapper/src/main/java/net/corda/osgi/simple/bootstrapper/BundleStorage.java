@@ -0,0 +1,322 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Location of the OSGi framework storage. The default one is a fresh temporary directory
+ * that gets deleted on exit, the persistent one is keyed by a hash of the embedded bundles
+ * and survives restarts so that the framework doesn't have to install them again.
+ */
+abstract class BundleStorage implements Closeable {
+    private static final Logger log = Logger.getLogger(BundleStorage.class.getName());
+
+    @Getter
+    protected final Path path;
+
+    protected BundleStorage(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @return true if the framework storage already contains all the bundles
+     */
+    abstract boolean isWarm();
+
+    /**
+     * Called once all the bundles have been installed in the framework storage
+     */
+    abstract void markReady();
+
+    /**
+     * Used instead of {@link #close()} when the framework may still be writing to the storage as the process exits,
+     * whatever needs cleaning up is left to the next process using the same cache directory
+     */
+    abstract void abandon();
+
+    @SneakyThrows
+    static BundleStorage temporary() {
+        Path path = Files.createTempDirectory(TemporaryStorage.PREFIX);
+        TemporaryStorage.purgeTrash(path.getParent());
+        return new TemporaryStorage(path);
+    }
+
+    /**
+     * Opens the persistent storage identified by {@code key}, falling back to a
+     * temporary one if it is being used by another process
+     */
+    @SneakyThrows
+    static BundleStorage persistent(Path cacheDirectory, String key) {
+        Files.createDirectories(cacheDirectory);
+        FileChannel lockChannel = FileChannel.open(cacheDirectory.resolve(key + PersistentStorage.LOCK_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = tryLock(lockChannel);
+        if(lock == null) {
+            lockChannel.close();
+            log.info(() -> String.format("OSGi cache '%s' is locked by another process, using a temporary one", key));
+            return temporary();
+        }
+        PersistentStorage result = new PersistentStorage(cacheDirectory, key, lockChannel, lock);
+        if(!result.isWarm()) {
+            PersistentStorage.purgeStaleEntries(cacheDirectory, key);
+        }
+        return result;
+    }
+
+    static Path defaultCacheDirectory() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "osgi-app-cache");
+    }
+
+    /**
+     * Identifies a bundle in the cache key: the entries of the application jar are identified by their path
+     * inside it, so that moving the installation keeps the cache, while the bundles installed by reference
+     * are read in place by the framework and keep their absolute location
+     */
+    static String keyOf(URL url) {
+        String location = url.toString();
+        int separator = location.indexOf("!/");
+        return "jar".equals(url.getProtocol()) && separator >= 0 ? location.substring(separator + 2) : location;
+    }
+
+    /**
+     * Computes a digest of the framework configuration and of the content of every bundle,
+     * for entries of a jar file the CRC and size from the central directory are used
+     * so that nothing needs to be inflated
+     */
+    @SneakyThrows
+    static String computeKey(List<URL> bundleUrls, byte[]... configuration) {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        for(byte[] bytes : configuration) {
+            md.update(bytes);
+            md.update((byte) 0);
+        }
+        byte[] buffer = new byte[0x10000];
+        for(URL url : bundleUrls) {
+            md.update(keyOf(url).getBytes(StandardCharsets.UTF_8));
+            URLConnection connection = url.openConnection();
+            JarEntry jarEntry = connection instanceof JarURLConnection ? ((JarURLConnection) connection).getJarEntry() : null;
+            if(jarEntry != null && jarEntry.getCrc() != -1 && jarEntry.getSize() != -1) {
+                md.update(String.format("%x:%d", jarEntry.getCrc(), jarEntry.getSize()).getBytes(StandardCharsets.UTF_8));
+            } else {
+                try(InputStream inputStream = connection.getInputStream()) {
+                    int read;
+                    while((read = inputStream.read(buffer)) >= 0) {
+                        md.update(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for(byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException ofle) {
+            return null;
+        }
+    }
+
+    @SneakyThrows
+    static void deleteRecursively(Path root) {
+        if(Files.exists(root)) {
+            try(Stream<Path> stream = Files.walk(root)) {
+                stream.sorted(Comparator.reverseOrder())
+                        .forEach(new Consumer<Path>() {
+                            @Override
+                            @SneakyThrows
+                            public void accept(Path path) {
+                                Files.delete(path);
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Deletes {@code root}, ignoring the files that cannot be deleted
+     */
+    static void deleteQuietly(Path root) {
+        try(Stream<Path> stream = Files.walk(root)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ioe) {
+                    log.log(Level.FINE, ioe, () -> String.format("Unable to delete '%s'", path));
+                }
+            });
+        } catch (IOException | UncheckedIOException ex) {
+            log.log(Level.FINE, ex, () -> String.format("Unable to delete '%s'", root));
+        }
+    }
+
+    /**
+     * Deleted in the background on close, so that the exit of the process doesn't wait for it.
+     * The directory is first renamed, whatever the background deletion doesn't get to remove before the
+     * JVM exits is purged by the next process that creates a temporary storage in the same directory.
+     * An abandoned storage is not renamed, as the framework might still be writing to it, a marker with the
+     * trash suffix is created next to it instead.
+     */
+    private static final class TemporaryStorage extends BundleStorage {
+        private static final String PREFIX = "osgi-cache";
+        private static final String TRASH_SUFFIX = ".trash";
+
+        private TemporaryStorage(Path path) {
+            super(path);
+        }
+
+        @Override
+        boolean isWarm() {
+            return false;
+        }
+
+        @Override
+        void markReady() {
+        }
+
+        @Override
+        public void close() {
+            Path trash = path.resolveSibling(path.getFileName() + TRASH_SUFFIX);
+            try {
+                Files.move(path, trash, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ioe) {
+                log.log(Level.FINE, ioe, () -> String.format("Unable to rename '%s', deleting it in place", path));
+                deleteRecursively(path);
+                return;
+            }
+            new NamedThreadFactory("storage-cleanup").newThread(() -> deleteQuietly(trash)).start();
+        }
+
+        @Override
+        void abandon() {
+            try {
+                Files.createFile(path.resolveSibling(path.getFileName() + TRASH_SUFFIX));
+            } catch (IOException ioe) {
+                log.log(Level.FINE, ioe, () -> String.format("Unable to mark '%s' for deletion", path));
+            }
+        }
+
+        private static void purgeTrash(Path directory) {
+            new NamedThreadFactory("storage-purge").newThread(() -> {
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + TRASH_SUFFIX)) {
+                    for(Path trash : stream) {
+                        if(Files.isRegularFile(trash)) {
+                            String fileName = trash.getFileName().toString();
+                            deleteQuietly(trash.resolveSibling(fileName.substring(0, fileName.length() - TRASH_SUFFIX.length())));
+                        }
+                        deleteQuietly(trash);
+                    }
+                } catch (IOException ioe) {
+                    log.log(Level.FINE, ioe, () -> String.format("Unable to purge '%s'", directory));
+                }
+            }).start();
+        }
+    }
+
+    private static final class PersistentStorage extends BundleStorage {
+        private static final String LOCK_SUFFIX = ".lock";
+        private static final String READY_SUFFIX = ".ready";
+
+        private final Path readyMarker;
+        private final FileChannel lockChannel;
+        private final FileLock lock;
+        private final boolean warm;
+
+        private PersistentStorage(Path cacheDirectory, String key, FileChannel lockChannel, FileLock lock) {
+            super(cacheDirectory.resolve(key));
+            this.readyMarker = cacheDirectory.resolve(key + READY_SUFFIX);
+            this.lockChannel = lockChannel;
+            this.lock = lock;
+            this.warm = Files.exists(readyMarker) && Files.isDirectory(path);
+        }
+
+        @Override
+        boolean isWarm() {
+            return warm;
+        }
+
+        @Override
+        @SneakyThrows
+        void markReady() {
+            if(!warm) {
+                Files.write(readyMarker, new byte[0]);
+            }
+        }
+
+        @Override
+        @SneakyThrows
+        public void close() {
+            try {
+                lock.release();
+            } finally {
+                lockChannel.close();
+            }
+        }
+
+        // the lock is released by the operating system when the process exits
+        @Override
+        void abandon() {
+        }
+
+        /**
+         * Removes the storage directories left behind by previous versions of the application,
+         * skipping those that are currently in use
+         */
+        private static void purgeStaleEntries(Path cacheDirectory, String currentKey) throws IOException {
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory, "*" + LOCK_SUFFIX)) {
+                for(Path lockFile : stream) {
+                    String fileName = lockFile.getFileName().toString();
+                    String key = fileName.substring(0, fileName.length() - LOCK_SUFFIX.length());
+                    Path storageDirectory = cacheDirectory.resolve(key);
+                    if(key.equals(currentKey) || !Files.exists(storageDirectory)) continue;
+                    // lock files are never deleted, otherwise two processes could end up holding
+                    // a lock on different files for the same storage directory
+                    try(FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+                        FileLock staleLock = tryLock(channel);
+                        if(staleLock != null) {
+                            try {
+                                Files.deleteIfExists(cacheDirectory.resolve(key + READY_SUFFIX));
+                                deleteRecursively(storageDirectory);
+                            } finally {
+                                staleLock.release();
+                            }
+                        }
+                    } catch (IOException ioe) {
+                        log.log(Level.FINE, ioe, () -> String.format("Unable to remove stale OSGi cache '%s'", key));
+                    }
+                }
+            }
+            Files.deleteIfExists(cacheDirectory.resolve(currentKey + READY_SUFFIX));
+        }
+    }
+}
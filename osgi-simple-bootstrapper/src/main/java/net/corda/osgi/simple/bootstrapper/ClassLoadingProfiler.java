@@ -0,0 +1,230 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.SneakyThrows;
+import org.osgi.framework.BundleReference;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Records, for each class loader, the number and the size of the classes it loads, when they are loaded
+ * and the time the other {@link ClassFileTransformer}s spend on them. One transformer is registered before
+ * the Java agents are initialised and another one afterwards, the time elapsed between the two on the same thread
+ * is the time spent transforming the class. Neither transformer modifies the classes.
+ * The class loaders of the bundles are reported under the name of their bundle.
+ */
+final class ClassLoadingProfiler {
+    private static final Logger log = Logger.getLogger(ClassLoadingProfiler.class.getName());
+
+    private static final String BOOTSTRAP_LOADER = "bootstrap";
+    private static final int MAX_DEPTH = 32;
+
+    private static volatile ClassLoadingProfiler instance;
+
+    static Optional<ClassLoadingProfiler> get() {
+        return Optional.ofNullable(instance);
+    }
+
+    private static final class LoaderStats {
+        private final String name;
+        private final LongAdder classes = new LongAdder();
+        private final LongAdder startupClasses = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder transformNanos = new LongAdder();
+        private final AtomicLong firstNanos = new AtomicLong();
+        private volatile long lastNanos;
+
+        private LoaderStats(String name) {
+            this.name = name;
+        }
+
+        private void merge(LoaderStats other) {
+            classes.add(other.classes.sum());
+            startupClasses.add(other.startupClasses.sum());
+            bytes.add(other.bytes.sum());
+            transformNanos.add(other.transformNanos.sum());
+            long otherFirst = other.firstNanos.get();
+            if(firstNanos.get() == 0 || otherFirst - firstNanos.get() < 0) {
+                firstNanos.set(otherFirst);
+            }
+            if(lastNanos == 0 || other.lastNanos - lastNanos > 0) {
+                lastNanos = other.lastNanos;
+            }
+        }
+    }
+
+    private final StartupTimeline timeline = StartupTimeline.get();
+    // keeps the class loaders of the uninstalled bundles alive, acceptable for a profiler
+    private final ConcurrentMap<ClassLoader, LoaderStats> stats = new ConcurrentHashMap<>();
+    private final LoaderStats bootstrapStats = new LoaderStats(BOOTSTRAP_LOADER);
+
+    // start times of the classes being transformed on the current thread, the loading of a class
+    // can trigger the loading of other classes; the first slot holds the depth
+    private final ThreadLocal<long[]> transformStarts = ThreadLocal.withInitial(() -> new long[MAX_DEPTH + 1]);
+
+    private volatile long applicationStartNanos = Long.MAX_VALUE;
+
+    private final ClassFileTransformer startTransformer = new ClassFileTransformer() {
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            long now = System.nanoTime();
+            long[] starts = transformStarts.get();
+            int depth = (int) starts[0];
+            if(depth < MAX_DEPTH) {
+                starts[depth + 1] = now;
+            }
+            starts[0] = depth + 1;
+            LoaderStats loaderStats = statsOf(loader);
+            loaderStats.classes.increment();
+            if(now < applicationStartNanos) {
+                loaderStats.startupClasses.increment();
+            }
+            loaderStats.bytes.add(classfileBuffer.length);
+            loaderStats.firstNanos.compareAndSet(0, now);
+            loaderStats.lastNanos = now;
+            return null;
+        }
+    };
+
+    private final ClassFileTransformer endTransformer = new ClassFileTransformer() {
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            long[] starts = transformStarts.get();
+            int depth = (int) starts[0];
+            if(depth > 0) {
+                starts[0] = depth - 1;
+                if(depth <= MAX_DEPTH) {
+                    statsOf(loader).transformNanos.add(System.nanoTime() - starts[depth]);
+                }
+            }
+            return null;
+        }
+    };
+
+    private ClassLoadingProfiler() {}
+
+    /**
+     * Registers the transformer that has to run before the ones of the Java agents
+     */
+    @SneakyThrows
+    static ClassLoadingProfiler install(Instrumentation instrumentation) {
+        ClassLoadingProfiler profiler = new ClassLoadingProfiler();
+        // loads the classes the transformers need beforehand, so that they don't have to be loaded while transforming
+        ClassLoader loader = ClassLoadingProfiler.class.getClassLoader();
+        profiler.startTransformer.transform(loader, null, null, null, new byte[0]);
+        profiler.endTransformer.transform(loader, null, null, null, new byte[0]);
+        profiler.stats.clear();
+        instrumentation.addTransformer(profiler.startTransformer, false);
+        instance = profiler;
+        return profiler;
+    }
+
+    /**
+     * Registers the transformer that has to run after the ones of the Java agents, to be called on the thread
+     * that initialised them
+     */
+    void agentsInitialised(Instrumentation instrumentation) {
+        instrumentation.addTransformer(endTransformer, false);
+        // the classes loaded by this thread until now were only seen by startTransformer, from now on
+        // every transformation started here is also ended here
+        transformStarts.get()[0] = 0;
+    }
+
+    /**
+     * The classes loaded from now on are not counted as loaded during the startup
+     */
+    void applicationStarting() {
+        if(applicationStartNanos == Long.MAX_VALUE) {
+            applicationStartNanos = System.nanoTime();
+        }
+    }
+
+    private LoaderStats statsOf(ClassLoader loader) {
+        if(loader == null) {
+            return bootstrapStats;
+        }
+        LoaderStats result = stats.get(loader);
+        if(result == null) {
+            result = stats.computeIfAbsent(loader, it -> new LoaderStats(loaderName(loader)));
+        }
+        return result;
+    }
+
+    static String loaderName(ClassLoader loader) {
+        if(loader instanceof BundleReference && ((BundleReference) loader).getBundle() != null) {
+            return ActivationScheduler.bundleName(((BundleReference) loader).getBundle());
+        }
+        return loader.getClass().getName();
+    }
+
+    /**
+     * Writes the report to {@code destination}, or logs it if {@code destination} is null
+     */
+    @SneakyThrows
+    void writeReport(Path destination) {
+        if(destination == null) {
+            StringWriter writer = new StringWriter();
+            writeReport(writer);
+            log.info(writer::toString);
+        } else {
+            try(Writer writer = Files.newBufferedWriter(destination, StandardCharsets.UTF_8)) {
+                writeReport(writer);
+            }
+        }
+    }
+
+    private void writeReport(Writer writer) {
+        // class loaders with the same name, such as the reflection ones or those of a refreshed bundle, are merged
+        Map<String, LoaderStats> merged = new HashMap<>();
+        List<LoaderStats> all = new ArrayList<>(stats.values());
+        all.add(bootstrapStats);
+        for(LoaderStats it : all) {
+            if(it.classes.sum() > 0) {
+                merged.computeIfAbsent(it.name, LoaderStats::new).merge(it);
+            }
+        }
+        List<LoaderStats> sorted = new ArrayList<>(merged.values());
+        // the time spent defining the classes is not observable, it grows with the size of the class files
+        sorted.sort(Comparator.comparingLong((LoaderStats it) -> it.bytes.sum())
+                .thenComparingLong(it -> it.transformNanos.sum())
+                .reversed());
+        PrintWriter pw = new PrintWriter(writer);
+        pw.println("Class loading profile, times in milliseconds since the start of the JVM");
+        pw.printf("%8s %8s %10s %12s %10s %10s  %s%n",
+                "classes", "startup", "KiB", "transform", "first", "last", "class loader");
+        for(LoaderStats it : sorted) {
+            pw.printf("%8d %8d %10d %12.3f %10.1f %10.1f  %s%n",
+                    it.classes.sum(),
+                    it.startupClasses.sum(),
+                    it.bytes.sum() / 1024,
+                    it.transformNanos.sum() / 1e6,
+                    timeline.millisSinceJvmStart(it.firstNanos.get()),
+                    timeline.millisSinceJvmStart(it.lastNanos),
+                    it.name);
+        }
+        pw.printf("%8d classes loaded, %.3f ms spent in transformers%n",
+                sorted.stream().mapToLong(it -> it.classes.sum()).sum(),
+                sorted.stream().mapToLong(it -> it.transformNanos.sum()).sum() / 1e6);
+        pw.flush();
+    }
+}
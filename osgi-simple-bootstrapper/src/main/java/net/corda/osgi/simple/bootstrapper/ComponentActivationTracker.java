@@ -0,0 +1,95 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the activation of the Declarative Services components in the {@link StartupTimeline}.
+ * The DS runtime doesn't report activations, so the component configurations of a bundle are looked up through
+ * the {@code ServiceComponentRuntime} service once the bundle has started: the runtime activates the immediate
+ * components while it processes the {@link BundleEvent#STARTED} event, before the asynchronous listeners
+ * such as this one are called. The delayed components, activated on first use, are picked up by {@link #checkAll()}.
+ * The runtime is accessed reflectively, since its package is only visible to the bundles.
+ */
+final class ComponentActivationTracker implements org.osgi.framework.BundleListener {
+    private static final Logger log = Logger.getLogger(ComponentActivationTracker.class.getName());
+
+    private static final String SERVICE_COMPONENT_RUNTIME = "org.osgi.service.component.runtime.ServiceComponentRuntime";
+
+    // ComponentConfigurationDTO.ACTIVE
+    private static final int ACTIVE = 8;
+
+    private final BundleContext ctx;
+
+    // ids of the component configurations already recorded
+    private final Set<Long> activated = ConcurrentHashMap.newKeySet();
+
+    ComponentActivationTracker(BundleContext ctx) {
+        this.ctx = ctx;
+    }
+
+    void register() {
+        ctx.addBundleListener(this);
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent evt) {
+        if(evt.getType() == BundleEvent.STARTED) {
+            check(evt.getBundle());
+        }
+    }
+
+    /**
+     * Records the components activated since the last check, in every bundle
+     */
+    void checkAll() {
+        check(null);
+    }
+
+    /**
+     * @param started the bundle that has just started, null to check every bundle
+     */
+    private void check(Bundle started) {
+        ServiceReference<?> reference = ctx.getServiceReference(SERVICE_COMPONENT_RUNTIME);
+        if(reference == null) {
+            return;
+        }
+        // the components of the bundles started before the DS runtime are activated when the runtime starts
+        Bundle[] bundles = started == null || started.equals(reference.getBundle()) ? ctx.getBundles() : new Bundle[] {started};
+        Object runtime = ctx.getService(reference);
+        if(runtime == null) {
+            return;
+        }
+        try {
+            Class<?> runtimeClass = runtime.getClass().getClassLoader().loadClass(SERVICE_COMPONENT_RUNTIME);
+            Method descriptions = runtimeClass.getMethod("getComponentDescriptionDTOs", Bundle[].class);
+            Method configurations = null;
+            for(Object description : (Collection<?>) descriptions.invoke(runtime, (Object) bundles)) {
+                if(configurations == null) {
+                    configurations = runtimeClass.getMethod("getComponentConfigurationDTOs", description.getClass());
+                }
+                for(Object configuration : (Collection<?>) configurations.invoke(runtime, description)) {
+                    Class<?> configurationClass = configuration.getClass();
+                    int state = configurationClass.getField("state").getInt(configuration);
+                    long id = configurationClass.getField("id").getLong(configuration);
+                    if(state == ACTIVE && activated.add(id)) {
+                        StartupTimeline.get().mark("component", (String) description.getClass().getField("name").get(description));
+                    }
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.log(Level.FINE, ex, () -> "Unable to list the active components");
+        } finally {
+            ctx.ungetService(reference);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package net.corda.osgi.simple.bootstrapper;
+
+/**
+ * How the exit codes of applications running concurrently make up the exit code of the process
+ * and when the framework is stopped
+ */
+enum ExitCodePolicy {
+    // stops the framework as soon as an application fails and exits with its exit code,
+    // exits with 0 once every application has succeeded
+    FIRST_FAILURE,
+    // waits for every application and exits with the highest exit code
+    MAX,
+    // waits for every application and exits with 0 if all of them succeeded, 1 otherwise
+    ALL
+}
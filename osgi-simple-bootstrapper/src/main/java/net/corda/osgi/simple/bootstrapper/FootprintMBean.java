@@ -0,0 +1,64 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.RequiredArgsConstructor;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+import java.lang.instrument.Instrumentation;
+
+/**
+ * Generates a {@link FootprintReport} on demand through its {@code report} operation
+ */
+@RequiredArgsConstructor
+final class FootprintMBean implements DynamicMBean {
+
+    static final String OBJECT_NAME = "net.corda.osgi.bootstrapper:type=Footprint";
+
+    private static final String REPORT_OPERATION = "report";
+
+    private final Instrumentation instrumentation;
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if(REPORT_OPERATION.equals(actionName) && (params == null || params.length == 0)) {
+            return FootprintReport.generate(instrumentation);
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        MBeanOperationInfo report = new MBeanOperationInfo(REPORT_OPERATION,
+                "Classes and estimated metaspace share of each class loader, classes loaded by several class loaders",
+                new MBeanParameterInfo[0], String.class.getName(), MBeanOperationInfo.INFO);
+        return new MBeanInfo(getClass().getName(), "Footprint of the bundles of the OSGi application",
+                new MBeanAttributeInfo[0], null, new MBeanOperationInfo[] {report}, null);
+    }
+}
@@ -0,0 +1,139 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.SneakyThrows;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Describes how many classes each class loader holds, bundle class loaders being reported under the name
+ * of their bundle, how much of the metaspace they account for and which of their classes are also loaded
+ * by another class loader. The metaspace share of a class loader is estimated from its number of classes,
+ * the JVM doesn't expose the metaspace used per class loader.
+ */
+final class FootprintReport {
+
+    private static final String BOOTSTRAP_LOADER = "bootstrap";
+    private static final int DUPLICATE_EXAMPLES = 5;
+
+    private static final class LoaderFootprint {
+        private final String name;
+        private final Set<String> classNames = new TreeSet<>();
+        private final Set<String> duplicates = new TreeSet<>();
+
+        private LoaderFootprint(String name) {
+            this.name = name;
+        }
+    }
+
+    private FootprintReport() {}
+
+    @SneakyThrows
+    static void write(Instrumentation instrumentation, Path destination) {
+        try(Writer writer = Files.newBufferedWriter(destination, StandardCharsets.UTF_8)) {
+            write(instrumentation, writer);
+        }
+    }
+
+    static String generate(Instrumentation instrumentation) {
+        StringWriter writer = new StringWriter();
+        write(instrumentation, writer);
+        return writer.toString();
+    }
+
+    /**
+     * On HotSpot the 'Metaspace' pool already includes the 'Compressed Class Space' one,
+     * the latter is only used when there is no metaspace pool
+     */
+    private static long metaspaceUsed() {
+        long classSpaceUsed = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() != MemoryType.NON_HEAP || !pool.isValid()) {
+                continue;
+            }
+            if(pool.getName().contains("Metaspace")) {
+                return pool.getUsage().getUsed();
+            } else if(pool.getName().contains("Class Space")) {
+                classSpaceUsed += pool.getUsage().getUsed();
+            }
+        }
+        return classSpaceUsed;
+    }
+
+    private static void write(Instrumentation instrumentation, Writer writer) {
+        // class loaders with the same name, such as the reflection ones or those of a refreshed bundle, are merged
+        Map<String, LoaderFootprint> byName = new HashMap<>();
+        Map<ClassLoader, LoaderFootprint> byLoader = new IdentityHashMap<>();
+        LoaderFootprint bootstrap = new LoaderFootprint(BOOTSTRAP_LOADER);
+        // the class loaders that loaded each class name
+        Map<String, List<LoaderFootprint>> byClassName = new HashMap<>();
+        int totalClasses = 0;
+        for(Class<?> cls : instrumentation.getAllLoadedClasses()) {
+            if(cls.isArray() || cls.isPrimitive()) {
+                continue;
+            }
+            ClassLoader loader = cls.getClassLoader();
+            LoaderFootprint footprint = loader == null ? bootstrap :
+                    byLoader.computeIfAbsent(loader, it -> byName.computeIfAbsent(
+                            ClassLoadingProfiler.loaderName(it), LoaderFootprint::new));
+            if(footprint.classNames.add(cls.getName())) {
+                totalClasses++;
+                byClassName.computeIfAbsent(cls.getName(), it -> new ArrayList<>(1)).add(footprint);
+            }
+        }
+        for(Map.Entry<String, List<LoaderFootprint>> entry : byClassName.entrySet()) {
+            if(entry.getValue().size() > 1) {
+                for(LoaderFootprint footprint : entry.getValue()) {
+                    footprint.duplicates.add(entry.getKey());
+                }
+            }
+        }
+        long metaspaceUsed = metaspaceUsed();
+
+        List<LoaderFootprint> sorted = new ArrayList<>(byName.values());
+        sorted.add(bootstrap);
+        sorted.sort(Comparator.comparingInt((LoaderFootprint it) -> it.classNames.size()).reversed());
+        PrintWriter pw = new PrintWriter(writer);
+        pw.printf("Footprint: %d classes loaded by %d class loaders, %d KiB of metaspace used%n",
+                totalClasses, sorted.size(), metaspaceUsed / 1024);
+        pw.printf("%8s %10s %12s  %s%n", "classes", "duplicates", "metaspace", "class loader");
+        for(LoaderFootprint it : sorted) {
+            long metaspaceShare = totalClasses == 0 ? 0 : metaspaceUsed * it.classNames.size() / totalClasses;
+            pw.printf("%8d %10d %8d KiB  %s%n", it.classNames.size(), it.duplicates.size(), metaspaceShare / 1024, it.name);
+        }
+        pw.println();
+        pw.println("Classes also loaded by other class loaders:");
+        for(LoaderFootprint it : sorted) {
+            if(it.duplicates.isEmpty() || BOOTSTRAP_LOADER.equals(it.name)) {
+                continue;
+            }
+            pw.printf("%s: %d%n", it.name, it.duplicates.size());
+            it.duplicates.stream().limit(DUPLICATE_EXAMPLES).forEach(className -> {
+                StringBuilder others = new StringBuilder();
+                for(LoaderFootprint other : byClassName.get(className)) {
+                    if(other != it) {
+                        others.append(others.length() == 0 ? "" : ", ").append(other.name);
+                    }
+                }
+                pw.printf("    %s, also in %s%n", className, others);
+            });
+        }
+        pw.flush();
+    }
+}
@@ -0,0 +1,142 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import net.corda.osgi.simple.bootstrapper.api.metrics.Counter;
+import net.corda.osgi.simple.bootstrapper.api.metrics.MetricRegistry;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.SynchronousBundleListener;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Populates a {@link MetricRegistry} with the metrics of the OSGi framework itself:
+ * the bundle and service events, the number of bundles per state and the duration of the startup phases
+ */
+final class FrameworkMetrics implements SynchronousBundleListener, ServiceListener, org.osgi.framework.FrameworkListener {
+
+    private static final String[] BUNDLE_EVENT_TYPES = {
+            "installed", "started", "stopped", "updated", "uninstalled",
+            "resolved", "unresolved", "starting", "stopping", "lazy_activation"
+    };
+
+    private static final String[] SERVICE_EVENT_TYPES = {
+            "registered", "modified", "unregistering", "modified_endmatch"
+    };
+
+    private final MetricRegistry registry;
+
+    // indexed by the position of the bit of the event type
+    private final Counter[] bundleEvents = new Counter[BUNDLE_EVENT_TYPES.length];
+    private final Counter[] serviceEvents = new Counter[SERVICE_EVENT_TYPES.length];
+    private final Counter frameworkErrors;
+    private final AtomicBoolean startupRecorded = new AtomicBoolean(false);
+
+    FrameworkMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        for(int i = 0; i < bundleEvents.length; i++) {
+            bundleEvents[i] = registry.counter("osgi_bundle_events_total",
+                    "Number of bundle events by type", "type", BUNDLE_EVENT_TYPES[i]);
+        }
+        for(int i = 0; i < serviceEvents.length; i++) {
+            serviceEvents[i] = registry.counter("osgi_service_events_total",
+                    "Number of service events by type", "type", SERVICE_EVENT_TYPES[i]);
+        }
+        frameworkErrors = registry.counter("osgi_framework_errors_total", "Number of framework error events");
+    }
+
+    /**
+     * Starts counting the events of the framework and exposes the number of bundles and services
+     */
+    void register(BundleContext ctx) {
+        ctx.addBundleListener(this);
+        ctx.addServiceListener(this);
+        ctx.addFrameworkListener(this);
+        for(BundleState state : BundleState.values()) {
+            registry.gauge("osgi_bundles", "Number of bundles by state",
+                    () -> countBundles(ctx, state.getCode()), "state", state.getDescription());
+        }
+        registry.gauge("osgi_services", "Number of registered services", () -> {
+            try {
+                ServiceReference<?>[] references = ctx.getAllServiceReferences(null, null);
+                return references == null ? 0 : references.length;
+            } catch (Exception ex) {
+                return Double.NaN;
+            }
+        });
+    }
+
+    private static double countBundles(BundleContext ctx, int state) {
+        try {
+            int result = 0;
+            for(Bundle bundle : ctx.getBundles()) {
+                if(bundle.getState() == state) {
+                    result++;
+                }
+            }
+            return result;
+        } catch (IllegalStateException ex) {
+            // the framework has been stopped
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Exposes the total duration of each phase recorded so far by the {@link StartupTimeline},
+     * the first call also records the time the application took to start
+     */
+    void registerStartupPhases(StartupTimeline timeline) {
+        Set<String> phases = new TreeSet<>();
+        for(StartupTimeline.Span span : timeline.getSpans()) {
+            phases.add(span.getPhase());
+        }
+        for(String phase : phases) {
+            registry.gauge("osgi_startup_phase_seconds",
+                    "Cumulated duration of the spans of each startup phase, spans of concurrent phases overlap",
+                    () -> {
+                        long nanos = 0;
+                        for(StartupTimeline.Span span : timeline.getSpans()) {
+                            if(phase.equals(span.getPhase()) && span.getDurationNanos() >= 0) {
+                                nanos += span.getDurationNanos();
+                            }
+                        }
+                        return nanos / 1e9;
+                    }, "phase", phase);
+        }
+        if(startupRecorded.compareAndSet(false, true)) {
+            double startupSeconds = timeline.millisSinceJvmStart(System.nanoTime()) / 1e3;
+            registry.gauge("osgi_startup_seconds",
+                    "Time elapsed between the start of the JVM and the start of the application, or the activation of the bundles",
+                    () -> startupSeconds);
+        }
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        int index = Integer.numberOfTrailingZeros(event.getType());
+        if(index < bundleEvents.length) {
+            bundleEvents[index].increment();
+        }
+    }
+
+    @Override
+    public void serviceChanged(ServiceEvent event) {
+        int index = Integer.numberOfTrailingZeros(event.getType());
+        if(index < serviceEvents.length) {
+            serviceEvents[index].increment();
+        }
+    }
+
+    @Override
+    public void frameworkEvent(FrameworkEvent event) {
+        if(event.getType() == FrameworkEvent.ERROR) {
+            frameworkErrors.increment();
+        }
+    }
+}
@@ -2,41 +2,174 @@ package net.corda.osgi.simple.bootstrapper;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 
 import java.io.InputStream;
 import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Initialises the Java agents listed in {@code META-INF/javaAgents.properties}, in ascending order:
+ * within the same order the agents not flagged as concurrent are initialised first, serially and in declaration
+ * order, then the concurrent ones are initialised in parallel with each other.
+ * The initialisation time of every agent is recorded in the {@link StartupTimeline}.
+ */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class JavaAgentLauncher {
+    private static final Logger log = Logger.getLogger(JavaAgentLauncher.class.getName());
+
+    private static final String JAVA_AGENTS_RESOURCE = "META-INF/javaAgents.properties";
+    private static final Pattern AGENT_CLASS_KEY = Pattern.compile("agent\\.(\\d+)\\.class");
+
+    @RequiredArgsConstructor
+    private static final class AgentDescriptor {
+        private final String className;
+        private final String args;
+        private final int order;
+        private final boolean concurrent;
+    }
+
+    private static volatile Instrumentation instrumentation;
+
+    /**
+     * @return the {@link Instrumentation} the JVM passed to the launcher, if the application has been started with {@code -jar}
+     * or with the bootstrapper jar as {@code -javaagent}
+     */
+    static Optional<Instrumentation> getInstrumentation() {
+        return Optional.ofNullable(instrumentation);
+    }
 
     @SneakyThrows
-    static void premain(String agentArguments, Instrumentation instrumentation) {
+    public static void premain(String agentArguments, Instrumentation instrumentation) {
+        JavaAgentLauncher.instrumentation = instrumentation;
+        // only the command line can enable the profiler, META-INF/system.properties hasn't been loaded yet
+        ClassLoadingProfiler profiler = BootstrapperSettings.getBoolean(BootstrapperSettings.CLASS_LOADING_PROFILER, false) ?
+                ClassLoadingProfiler.install(instrumentation) : null;
         ClassLoader cl = JavaAgentLauncher.class.getClassLoader();
-        Enumeration<URL> it = cl.getResources("META-INF/javaAgents.properties");
+        List<AgentDescriptor> agents = new ArrayList<>();
+        Enumeration<URL> it = cl.getResources(JAVA_AGENTS_RESOURCE);
         while(it.hasMoreElements()) {
             URL url = it.nextElement();
             Properties properties = new Properties();
             try(InputStream inputStream = url.openStream()) {
                 properties.load(inputStream);
             }
-
-            for(Map.Entry<Object, Object> entry : properties.entrySet()) {
-                String agentClassName = (String) entry.getKey();
-                String agentArgs = (String) entry.getValue();
-                Class<?> agentClass = cl.loadClass(agentClassName);
-                Method premainMethod = agentClass.getMethod("premain", String.class, Instrumentation.class);
-                premainMethod.invoke(null, agentArgs, instrumentation);
+            agents.addAll(readAgents(properties));
+        }
+        // the sort is stable, agents of the same order keep their declaration order
+        agents.sort(Comparator.comparingInt(agent -> agent.order));
+        int start = 0;
+        while(start < agents.size()) {
+            int end = start;
+            while(end < agents.size() && agents.get(end).order == agents.get(start).order) {
+                end++;
             }
+            initialise(agents.subList(start, end), instrumentation, cl);
+            start = end;
+        }
+        if(profiler != null) {
+            profiler.agentsInitialised(instrumentation);
         }
     }
 
-    static void agentmain(String agentArguments, Instrumentation instrumentation) {
+    public static void agentmain(String agentArguments, Instrumentation instrumentation) {
         premain(agentArguments, instrumentation);
     }
+
+    /**
+     * Reads the {@code agent.<n>.*} entries written by the Gradle plugin, files where the keys are the agent classes
+     * and the values their arguments are still understood, those agents are initialised serially
+     */
+    private static List<AgentDescriptor> readAgents(Properties properties) {
+        Map<Integer, AgentDescriptor> indexed = new TreeMap<>();
+        for(String key : properties.stringPropertyNames()) {
+            Matcher matcher = AGENT_CLASS_KEY.matcher(key);
+            if(matcher.matches()) {
+                String prefix = "agent." + matcher.group(1) + ".";
+                indexed.put(Integer.parseInt(matcher.group(1)), new AgentDescriptor(
+                        properties.getProperty(key),
+                        properties.getProperty(prefix + "args"),
+                        Integer.parseInt(properties.getProperty(prefix + "order", "0").trim()),
+                        Boolean.parseBoolean(properties.getProperty(prefix + "concurrent", "false").trim())));
+            }
+        }
+        List<AgentDescriptor> result = new ArrayList<>(indexed.values());
+        if(result.isEmpty()) {
+            for(String className : new TreeSet<>(properties.stringPropertyNames())) {
+                result.add(new AgentDescriptor(className, properties.getProperty(className), 0, false));
+            }
+        }
+        return result;
+    }
+
+    @SneakyThrows
+    private static void initialise(List<AgentDescriptor> agents, Instrumentation instrumentation, ClassLoader cl) {
+        List<AgentDescriptor> concurrentAgents = new ArrayList<>();
+        // the serial agents never overlap with the concurrent ones, so they run first
+        for(AgentDescriptor agent : agents) {
+            if(agent.concurrent) {
+                concurrentAgents.add(agent);
+            } else {
+                initialise(agent, instrumentation, cl);
+            }
+        }
+        if(concurrentAgents.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(concurrentAgents.size(), new NamedThreadFactory("java-agent"));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(AgentDescriptor agent : concurrentAgents) {
+                futures.add(executor.submit(() -> {
+                    initialise(agent, instrumentation, cl);
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    throw ex.getCause();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SneakyThrows
+    private static void initialise(AgentDescriptor agent, Instrumentation instrumentation, ClassLoader cl) {
+        try(StartupTimeline.Span span = StartupTimeline.get().begin("agent", agent.className)) {
+            Class<?> agentClass = cl.loadClass(agent.className);
+            Method premainMethod = agentClass.getMethod("premain", String.class, Instrumentation.class);
+            try {
+                premainMethod.invoke(null, agent.args, instrumentation);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+            span.close();
+            log.fine(() -> String.format("Initialised Java agent '%s' in %d ms", agent.className,
+                    TimeUnit.NANOSECONDS.toMillis(span.getDurationNanos())));
+        }
+    }
 }
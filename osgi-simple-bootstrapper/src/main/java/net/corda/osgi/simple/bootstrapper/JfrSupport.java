@@ -0,0 +1,101 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits the startup phases as JFR events. The bootstrapper is compiled against the Java 8 class library,
+ * which has no {@code jdk.jfr}, so the event type is defined at runtime through {@code jdk.jfr.EventFactory}
+ * and every call goes through reflection; the JVMs without JFR simply don't get the events
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class JfrSupport {
+    private static final Logger log = Logger.getLogger(JfrSupport.class.getName());
+
+    private static final String EVENT_NAME = "net.corda.osgi.bootstrapper.StartupPhase";
+
+    // indexes of the fields of the event, in the order they are declared
+    private static final int PHASE_FIELD = 0;
+    private static final int SUBJECT_FIELD = 1;
+
+    // null when JFR is not available
+    private static final Object eventFactory;
+    private static final Method newEvent;
+    private static final Method set;
+    private static final Method begin;
+    private static final Method end;
+    private static final Method shouldCommit;
+    private static final Method commit;
+
+    static {
+        Object factory = null;
+        Method[] methods = new Method[6];
+        try {
+            ClassLoader loader = JfrSupport.class.getClassLoader();
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", true, loader);
+            Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            Class<?> nameClass = Class.forName("jdk.jfr.Name", true, loader);
+            Class<?> labelClass = Class.forName("jdk.jfr.Label", true, loader);
+            Class<?> categoryClass = Class.forName("jdk.jfr.Category", true, loader);
+            List<Object> annotations = Arrays.asList(
+                    annotationElement.newInstance(nameClass, EVENT_NAME),
+                    annotationElement.newInstance(labelClass, "Startup Phase"),
+                    annotationElement.newInstance(categoryClass, new String[] {"OSGi", "Bootstrapper"}));
+            Constructor<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", true, loader)
+                    .getConstructor(Class.class, String.class, List.class);
+            List<Object> fields = Arrays.asList(
+                    valueDescriptor.newInstance(String.class, "phase",
+                            Collections.singletonList(annotationElement.newInstance(labelClass, "Phase"))),
+                    valueDescriptor.newInstance(String.class, "subject",
+                            Collections.singletonList(annotationElement.newInstance(labelClass, "Subject"))));
+            Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory", true, loader);
+            Class<?> eventClass = Class.forName("jdk.jfr.Event", true, loader);
+            methods[0] = eventFactoryClass.getMethod("newEvent");
+            methods[1] = eventClass.getMethod("set", int.class, Object.class);
+            methods[2] = eventClass.getMethod("begin");
+            methods[3] = eventClass.getMethod("end");
+            methods[4] = eventClass.getMethod("shouldCommit");
+            methods[5] = eventClass.getMethod("commit");
+            factory = eventFactoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+            log.log(Level.FINE, ex, () -> "JFR is not available, the startup phases won't be recorded as JFR events");
+        }
+        eventFactory = factory;
+        newEvent = methods[0];
+        set = methods[1];
+        begin = methods[2];
+        end = methods[3];
+        shouldCommit = methods[4];
+        commit = methods[5];
+    }
+
+    static boolean isAvailable() {
+        return eventFactory != null;
+    }
+
+    @SneakyThrows
+    static Object begin(String phase, String subject) {
+        Object event = newEvent.invoke(eventFactory);
+        set.invoke(event, PHASE_FIELD, phase);
+        set.invoke(event, SUBJECT_FIELD, subject);
+        begin.invoke(event);
+        return event;
+    }
+
+    @SneakyThrows
+    static void commit(Object event) {
+        end.invoke(event);
+        if((Boolean) shouldCommit.invoke(event)) {
+            commit.invoke(event);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registers the MBeans of the bootstrapper in the platform MBean server
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class MBeans {
+    private static final Logger log = Logger.getLogger(MBeans.class.getName());
+
+    /**
+     * Registers {@code mbeans}, keyed by object name, on a background thread:
+     * initialising the platform MBean server is not cheap and doesn't need to delay the startup
+     */
+    static void registerAsync(Map<String, Object> mbeans) {
+        Thread thread = new Thread(() -> {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for(Map.Entry<String, Object> entry : mbeans.entrySet()) {
+                try {
+                    ObjectName name = new ObjectName(entry.getKey());
+                    if(!server.isRegistered(name)) {
+                        server.registerMBean(entry.getValue(), name);
+                    }
+                } catch (Exception ex) {
+                    log.log(Level.WARNING, ex, () -> String.format("Unable to register MBean '%s'", entry.getKey()));
+                }
+            }
+        }, "mbean-registration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static void unregister(Collection<String> objectNames) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for(String objectName : objectNames) {
+            try {
+                ObjectName name = new ObjectName(objectName);
+                if(server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (Exception ex) {
+                log.log(Level.FINE, ex, () -> String.format("Unable to unregister MBean '%s'", objectName));
+            }
+        }
+    }
+}
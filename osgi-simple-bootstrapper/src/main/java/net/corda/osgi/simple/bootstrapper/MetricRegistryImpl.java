@@ -0,0 +1,350 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.corda.osgi.simple.bootstrapper.api.metrics.Counter;
+import net.corda.osgi.simple.bootstrapper.api.metrics.Histogram;
+import net.corda.osgi.simple.bootstrapper.api.metrics.MetricRegistry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * {@link MetricRegistry} backed by striped adders: updating a metric never allocates nor blocks,
+ * the cost is paid when the metrics are exported
+ */
+final class MetricRegistryImpl implements MetricRegistry {
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL_NAME_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        HISTOGRAM("histogram");
+
+        private final String description;
+
+        Type(String description) {
+            this.description = description;
+        }
+    }
+
+    @Getter
+    abstract static class Metric {
+        private final String name;
+        private final String help;
+        // the labels formatted as in the Prometheus text format, empty if there are none
+        private final String labels;
+
+        Metric(String name, String help, String labels) {
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+        }
+
+        abstract Type getType();
+
+        /**
+         * The name and the labels of the metric, unique in the registry
+         */
+        String getKey() {
+            return name + labels;
+        }
+    }
+
+    static final class CounterMetric extends Metric implements Counter {
+        private final LongAdder value = new LongAdder();
+
+        CounterMetric(String name, String help, String labels) {
+            super(name, help, labels);
+        }
+
+        @Override
+        Type getType() {
+            return Type.COUNTER;
+        }
+
+        @Override
+        public void increment() {
+            value.increment();
+        }
+
+        @Override
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        @Override
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    static final class GaugeMetric extends Metric {
+        private final DoubleSupplier supplier;
+
+        GaugeMetric(String name, String help, String labels, DoubleSupplier supplier) {
+            super(name, help, labels);
+            this.supplier = supplier;
+        }
+
+        @Override
+        Type getType() {
+            return Type.GAUGE;
+        }
+
+        double get() {
+            return supplier.getAsDouble();
+        }
+    }
+
+    static final class HistogramMetric extends Metric implements Histogram {
+        private final double[] buckets;
+        // one more slot than buckets for the values above the highest bound
+        private final AtomicLongArray counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        HistogramMetric(String name, String help, String labels, double[] buckets) {
+            super(name, help, labels);
+            this.buckets = buckets;
+            this.counts = new AtomicLongArray(buckets.length + 1);
+        }
+
+        @Override
+        Type getType() {
+            return Type.HISTOGRAM;
+        }
+
+        @Override
+        public void record(double value) {
+            int index = Arrays.binarySearch(buckets, value);
+            // bounds are inclusive, a value that isn't a bound goes to the first bucket above it
+            counts.incrementAndGet(index < 0 ? -index - 1 : index);
+            sum.add(value);
+        }
+
+        @Override
+        public long getCount() {
+            long result = 0;
+            for(int i = 0; i < counts.length(); i++) {
+                result += counts.get(i);
+            }
+            return result;
+        }
+
+        @Override
+        public double getSum() {
+            return sum.sum();
+        }
+    }
+
+    /**
+     * The metrics sharing a name, all of the same type, keyed by their label names and values as given
+     * so that looking up an existing metric doesn't format its labels again
+     */
+    @RequiredArgsConstructor
+    private static final class Family {
+        private final String name;
+        private final Type type;
+        private final ConcurrentMap<List<String>, Metric> children = new ConcurrentHashMap<>();
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) getOrCreate(name, Type.COUNTER, labels,
+                formattedLabels -> new CounterMetric(name, help, formattedLabels));
+    }
+
+    @Override
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        String formattedLabels = formatLabels(name, labels);
+        family(name, Type.GAUGE).children.put(key(labels), new GaugeMetric(name, help, formattedLabels, value));
+    }
+
+    @Override
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) getOrCreate(name, Type.HISTOGRAM, labels, formattedLabels -> {
+            double[] bounds = buckets.clone();
+            for(int i = 1; i < bounds.length; i++) {
+                if(!(bounds[i - 1] < bounds[i])) {
+                    throw new IllegalArgumentException(String.format(
+                            "Buckets of histogram '%s' are not in ascending order: %s", name, Arrays.toString(buckets)));
+                }
+            }
+            return new HistogramMetric(name, help, formattedLabels, bounds);
+        });
+    }
+
+    @Override
+    public void remove(String name, String... labels) {
+        // the family is kept, so that the name can't be reused for another type
+        Family family = name == null ? null : families.get(name);
+        if(family != null) {
+            family.children.remove(Arrays.asList(labels));
+        }
+    }
+
+    Collection<Metric> getMetrics() {
+        List<Metric> result = new ArrayList<>();
+        for(Family family : families.values()) {
+            result.addAll(family.children.values());
+        }
+        // the series of a metric have to be contiguous in the Prometheus text format
+        result.sort(Comparator.comparing(Metric::getName).thenComparing(Metric::getLabels));
+        return result;
+    }
+
+    private Family family(String name, Type type) {
+        Family family = name == null ? null : families.get(name);
+        if(family == null) {
+            family = families.computeIfAbsent(checkName(name), key -> new Family(name, type));
+        }
+        if(family.type != type) {
+            throw typeMismatch(family, type);
+        }
+        return family;
+    }
+
+    private Metric getOrCreate(String name, Type type, String[] labels, Function<String, Metric> factory) {
+        Family family = family(name, type);
+        Metric metric = family.children.get(Arrays.asList(labels));
+        if(metric == null) {
+            metric = family.children.computeIfAbsent(key(labels), key -> factory.apply(formatLabels(name, labels)));
+        }
+        return metric;
+    }
+
+    // copies the labels, the array passed as varargs belongs to the caller
+    private static List<String> key(String[] labels) {
+        return Arrays.asList(labels.clone());
+    }
+
+    private static IllegalArgumentException typeMismatch(Family family, Type type) {
+        return new IllegalArgumentException(String.format("Metric '%s' is a %s, not a %s",
+                family.name, family.type.description, type.description));
+    }
+
+    private static String checkName(String name) {
+        if(name == null || !NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException(String.format("Invalid metric name '%s'", name));
+        }
+        return name;
+    }
+
+    private static String formatLabels(String name, String... labels) {
+        if(labels.length == 0) {
+            return "";
+        }
+        if(labels.length % 2 != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Labels of metric '%s' must be given as name and value pairs: %s", name, Arrays.toString(labels)));
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for(int i = 0; i < labels.length; i += 2) {
+            if(labels[i] == null || !LABEL_NAME_PATTERN.matcher(labels[i]).matches()) {
+                throw new IllegalArgumentException(String.format("Invalid label name '%s' of metric '%s'", labels[i], name));
+            }
+            if(i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = String.valueOf(labels[i + 1]);
+            for(int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                switch (c) {
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Writes all the metrics in the Prometheus text exposition format
+     */
+    void writePrometheus(Writer writer) throws IOException {
+        String previousName = null;
+        for(Metric metric : getMetrics()) {
+            if(!metric.getName().equals(previousName)) {
+                previousName = metric.getName();
+                if(metric.getHelp() != null) {
+                    writer.write("# HELP " + metric.getName() + " " +
+                            metric.getHelp().replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+                }
+                writer.write("# TYPE " + metric.getName() + " " + metric.getType().description + "\n");
+            }
+            switch (metric.getType()) {
+                case COUNTER:
+                    writeSample(writer, metric.getName(), metric.getLabels(), ((CounterMetric) metric).get());
+                    break;
+                case GAUGE:
+                    writeSample(writer, metric.getName(), metric.getLabels(), ((GaugeMetric) metric).get());
+                    break;
+                case HISTOGRAM:
+                    HistogramMetric histogram = (HistogramMetric) metric;
+                    long cumulativeCount = 0;
+                    for(int i = 0; i <= histogram.buckets.length; i++) {
+                        cumulativeCount += histogram.counts.get(i);
+                        String bound = i < histogram.buckets.length ? formatValue(histogram.buckets[i]) : "+Inf";
+                        writeSample(writer, metric.getName() + "_bucket",
+                                addLabel(metric.getLabels(), "le", bound), cumulativeCount);
+                    }
+                    writeSample(writer, metric.getName() + "_sum", metric.getLabels(), histogram.getSum());
+                    writeSample(writer, metric.getName() + "_count", metric.getLabels(), cumulativeCount);
+                    break;
+            }
+        }
+    }
+
+    private static String addLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+        writer.write(name);
+        writer.write(labels);
+        writer.write(' ');
+        writer.write(formatValue(value));
+        writer.write('\n');
+    }
+
+    static String formatValue(double value) {
+        if(Double.isNaN(value)) {
+            return "NaN";
+        } else if(Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        } else {
+            return Double.toString(value);
+        }
+    }
+}
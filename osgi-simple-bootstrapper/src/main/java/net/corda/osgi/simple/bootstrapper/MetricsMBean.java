@@ -0,0 +1,105 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.RequiredArgsConstructor;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exposes the content of a {@link MetricRegistryImpl} as read-only JMX attributes named after the metrics,
+ * histograms are exposed as two attributes suffixed with {@code _count} and {@code _sum}
+ */
+@RequiredArgsConstructor
+final class MetricsMBean implements DynamicMBean {
+    static final String OBJECT_NAME = "net.corda.osgi.bootstrapper:type=Metrics";
+
+    private static final String COUNT_SUFFIX = "_count";
+    private static final String SUM_SUFFIX = "_sum";
+
+    private final MetricRegistryImpl registry;
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for(MetricRegistryImpl.Metric metric : registry.getMetrics()) {
+            String key = metric.getKey();
+            switch (metric.getType()) {
+                case COUNTER:
+                    if(key.equals(attribute)) {
+                        return ((MetricRegistryImpl.CounterMetric) metric).get();
+                    }
+                    break;
+                case GAUGE:
+                    if(key.equals(attribute)) {
+                        return ((MetricRegistryImpl.GaugeMetric) metric).get();
+                    }
+                    break;
+                case HISTOGRAM:
+                    if((key + COUNT_SUFFIX).equals(attribute)) {
+                        return ((MetricRegistryImpl.HistogramMetric) metric).getCount();
+                    } else if((key + SUM_SUFFIX).equals(attribute)) {
+                        return ((MetricRegistryImpl.HistogramMetric) metric).getSum();
+                    }
+                    break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(String.format("Attribute '%s' is read-only", attribute.getName()));
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList result = new AttributeList();
+        for(String attribute : attributes) {
+            try {
+                result.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ex) {
+                // as per the DynamicMBean contract, the attributes that can't be read are left out
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for(MetricRegistryImpl.Metric metric : registry.getMetrics()) {
+            String key = metric.getKey();
+            String help = metric.getHelp() == null ? key : metric.getHelp();
+            switch (metric.getType()) {
+                case COUNTER:
+                    attributes.add(new MBeanAttributeInfo(key, Long.class.getName(), help, true, false, false));
+                    break;
+                case GAUGE:
+                    attributes.add(new MBeanAttributeInfo(key, Double.class.getName(), help, true, false, false));
+                    break;
+                case HISTOGRAM:
+                    attributes.add(new MBeanAttributeInfo(key + COUNT_SUFFIX, Long.class.getName(), help, true, false, false));
+                    attributes.add(new MBeanAttributeInfo(key + SUM_SUFFIX, Double.class.getName(), help, true, false, false));
+                    break;
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of the OSGi application",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
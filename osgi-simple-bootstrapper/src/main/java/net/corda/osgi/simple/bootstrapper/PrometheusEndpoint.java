@@ -0,0 +1,69 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Serves the metrics of a {@link MetricRegistryImpl} in the Prometheus text format on {@code /metrics}
+ */
+final class PrometheusEndpoint implements Closeable {
+    private static final Logger log = Logger.getLogger(PrometheusEndpoint.class.getName());
+
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    PrometheusEndpoint(MetricRegistryImpl registry, String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("metrics-http"));
+        server.setExecutor(executor);
+        server.createContext(PATH, exchange -> handle(registry, exchange));
+        server.start();
+        log.info(() -> String.format("Serving metrics on http://%s:%d%s",
+                host, server.getAddress().getPort(), PATH));
+    }
+
+    private static void handle(MetricRegistryImpl registry, HttpExchange exchange) throws IOException {
+        try {
+            if(!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try(Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8)) {
+                registry.writePrometheus(writer);
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, buffer.size());
+                try(OutputStream outputStream = exchange.getResponseBody()) {
+                    buffer.writeTo(outputStream);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
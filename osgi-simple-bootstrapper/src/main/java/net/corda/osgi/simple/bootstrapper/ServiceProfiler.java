@@ -0,0 +1,184 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.SneakyThrows;
+import net.corda.osgi.simple.bootstrapper.api.metrics.Counter;
+import net.corda.osgi.simple.bootstrapper.api.metrics.MetricRegistry;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.hooks.service.FindHook;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Counts the service lookups, through a {@link FindHook}, and the service registrations, modifications
+ * and unregistrations, through a {@link ServiceListener}, per bundle and per interface.
+ * The counts are published in the {@link MetricRegistry} and summarised in a report written at exit,
+ * along with the services still held by each bundle at that time.
+ */
+final class ServiceProfiler implements FindHook, ServiceListener {
+    private static final Logger log = Logger.getLogger(ServiceProfiler.class.getName());
+
+    private static final int REPORT_LIMIT = 20;
+
+    private static final class Entry {
+        private final String bundle;
+        private final String serviceInterface;
+        private final String event;
+        private final Counter counter;
+        // kept aside so that the report doesn't depend on the registry
+        private final LongAdder count = new LongAdder();
+
+        private Entry(String bundle, String serviceInterface, String event, Counter counter) {
+            this.bundle = bundle;
+            this.serviceInterface = serviceInterface;
+            this.event = event;
+            this.counter = counter;
+        }
+
+        private void increment() {
+            counter.increment();
+            count.increment();
+        }
+    }
+
+    private final MetricRegistry registry;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private BundleContext context;
+
+    ServiceProfiler(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    void register(BundleContext ctx) {
+        this.context = ctx;
+        ctx.registerService(FindHook.class, this, null);
+        ctx.addServiceListener(this);
+    }
+
+    private Entry entry(String bundle, String serviceInterface, String event) {
+        return entries.computeIfAbsent(bundle + '\n' + serviceInterface + '\n' + event, key -> {
+            Counter counter = "hit".equals(event) || "miss".equals(event) ?
+                    registry.counter("osgi_service_lookups_total",
+                            "Number of service lookups by calling bundle and interface, misses returned no service",
+                            "bundle", bundle, "interface", serviceInterface, "result", event) :
+                    registry.counter("osgi_service_registry_events_total",
+                            "Number of service registry events by registering bundle and interface",
+                            "bundle", bundle, "interface", serviceInterface, "type", event);
+            return new Entry(bundle, serviceInterface, event, counter);
+        });
+    }
+
+    @Override
+    public void find(BundleContext ctx, String name, String filter, boolean allServices,
+                     Collection<ServiceReference<?>> references) {
+        Bundle bundle = ctx.getBundle();
+        // the lookups of the bootstrapper itself, including the ones made to write the report, are left out
+        if(bundle == null || bundle.getBundleId() == 0) {
+            return;
+        }
+        String serviceInterface = name != null ? name : (filter != null ? filter : "*");
+        entry(ActivationScheduler.bundleName(bundle), serviceInterface, references.isEmpty() ? "miss" : "hit").increment();
+    }
+
+    @Override
+    public void serviceChanged(ServiceEvent event) {
+        String type;
+        switch (event.getType()) {
+            case ServiceEvent.REGISTERED:
+                type = "registered";
+                break;
+            case ServiceEvent.MODIFIED:
+                type = "modified";
+                break;
+            case ServiceEvent.UNREGISTERING:
+                type = "unregistering";
+                break;
+            default:
+                return;
+        }
+        ServiceReference<?> reference = event.getServiceReference();
+        Bundle bundle = reference.getBundle();
+        String bundleName = bundle == null ? "unknown" : ActivationScheduler.bundleName(bundle);
+        for(String serviceInterface : (String[]) reference.getProperty(Constants.OBJECTCLASS)) {
+            entry(bundleName, serviceInterface, type).increment();
+        }
+    }
+
+    /**
+     * Writes the report to {@code destination}, or logs it if {@code destination} is null.
+     * Has to be called before the bundles are stopped for the services in use to be listed
+     */
+    @SneakyThrows
+    void writeReport(Path destination) {
+        if(destination == null) {
+            StringWriter writer = new StringWriter();
+            writeReport(writer);
+            log.info(writer::toString);
+        } else {
+            try(Writer writer = Files.newBufferedWriter(destination, StandardCharsets.UTF_8)) {
+                writeReport(writer);
+            }
+        }
+    }
+
+    private void writeReport(Writer writer) {
+        PrintWriter pw = new PrintWriter(writer);
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong((Entry it) -> it.count.sum()).reversed());
+        pw.println("Service registry profile");
+        for(String[] section : new String[][] {
+                {"Lookups by calling bundle and interface", "hit"},
+                {"Lookups returning no service by calling bundle and interface", "miss"},
+                {"Registrations by registering bundle and interface", "registered"},
+                {"Modifications by registering bundle and interface", "modified"},
+                {"Unregistrations by registering bundle and interface", "unregistering"}}) {
+            pw.println();
+            pw.println(section[0] + ":");
+            sorted.stream()
+                    .filter(it -> section[1].equals(it.event))
+                    .limit(REPORT_LIMIT)
+                    .forEach(it -> pw.printf("%10d  %s  %s%n", it.count.sum(), it.bundle, it.serviceInterface));
+        }
+        pw.println();
+        pw.println("Services in use:");
+        try {
+            ServiceReference<?>[] references = context.getAllServiceReferences(null, null);
+            if(references != null) {
+                for(ServiceReference<?> reference : references) {
+                    Bundle[] users = reference.getUsingBundles();
+                    if(users != null) {
+                        List<String> userNames = new ArrayList<>();
+                        for(Bundle user : users) {
+                            userNames.add(ActivationScheduler.bundleName(user));
+                        }
+                        pw.printf("%10d  %s %s used by %s%n", users.length,
+                                reference.getProperty(Constants.SERVICE_ID),
+                                String.join(",", (String[]) reference.getProperty(Constants.OBJECTCLASS)),
+                                String.join(", ", userNames));
+                    }
+                }
+            }
+        } catch (InvalidSyntaxException | IllegalStateException ex) {
+            pw.println("unavailable: " + ex.getMessage());
+        }
+        pw.flush();
+    }
+}
@@ -0,0 +1,160 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the duration of every phase of the application startup, each phase is also
+ * emitted as a JFR event when the running JVM supports it
+ */
+final class StartupTimeline {
+    private static final Logger log = Logger.getLogger(StartupTimeline.class.getName());
+
+    private static final StartupTimeline instance = new StartupTimeline();
+
+    static StartupTimeline get() {
+        return instance;
+    }
+
+    @Getter
+    static final class Span implements AutoCloseable {
+        private final String phase;
+        private final String subject;
+        private final String thread;
+        private final long startNanos;
+        private long durationNanos = -1;
+        private final Object jfrEvent;
+
+        private Span(String phase, String subject, Object jfrEvent) {
+            this.phase = phase;
+            this.subject = subject;
+            this.thread = Thread.currentThread().getName();
+            this.startNanos = System.nanoTime();
+            this.jfrEvent = jfrEvent;
+        }
+
+        @Override
+        public void close() {
+            if(durationNanos < 0) {
+                durationNanos = System.nanoTime() - startNanos;
+                if(jfrEvent != null) {
+                    JfrSupport.commit(jfrEvent);
+                }
+                instance.spans.add(this);
+            }
+        }
+    }
+
+    private final long originNanos = System.nanoTime();
+    private final long originUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    private final boolean jfrEnabled;
+    private final ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    private StartupTimeline() {
+        jfrEnabled = BootstrapperSettings.getBoolean(BootstrapperSettings.TIMELINE_JFR, true) && JfrSupport.isAvailable();
+    }
+
+    /**
+     * Starts measuring a phase, the phase ends when the returned {@link Span} is closed
+     */
+    Span begin(String phase, String subject) {
+        return new Span(phase, subject, jfrEnabled ? JfrSupport.begin(phase, subject) : null);
+    }
+
+    Span begin(String phase) {
+        return begin(phase, null);
+    }
+
+    /**
+     * Records a phase without duration
+     */
+    void mark(String phase, String subject) {
+        begin(phase, subject).close();
+    }
+
+    List<Span> getSpans() {
+        List<Span> result = new ArrayList<>(spans);
+        result.sort((s1, s2) -> Long.compare(s1.startNanos, s2.startNanos));
+        return result;
+    }
+
+    /**
+     * @return the time elapsed between the start of the JVM and {@code nanos}
+     */
+    double millisSinceJvmStart(long nanos) {
+        return originUptimeMillis + (nanos - originNanos) / 1e6;
+    }
+
+    /**
+     * Writes the recorded phases to the file configured with
+     * {@link BootstrapperSettings#TIMELINE_REPORT}, if any
+     */
+    void writeReport() {
+        BootstrapperSettings.getString(BootstrapperSettings.TIMELINE_REPORT).map(Paths::get).ifPresent(this::writeReport);
+    }
+
+    @SneakyThrows
+    private void writeReport(Path destination) {
+        try(Writer writer = Files.newBufferedWriter(destination, StandardCharsets.UTF_8)) {
+            writer.write("{\n  \"spans\": [");
+            boolean first = true;
+            for(Span span : getSpans()) {
+                writer.write(first ? "\n" : ",\n");
+                first = false;
+                writer.write(String.format(Locale.ROOT,
+                        "    {\"phase\": %s, \"subject\": %s, \"thread\": %s, \"startMillis\": %.3f, \"durationMillis\": %.3f}",
+                        jsonString(span.phase), jsonString(span.subject), jsonString(span.thread),
+                        millisSinceJvmStart(span.startNanos), span.durationNanos / 1e6));
+            }
+            writer.write("\n  ]\n}\n");
+        } catch (Exception ex) {
+            log.log(Level.WARNING, ex, () -> String.format("Unable to write the startup timeline to '%s'", destination));
+        }
+    }
+
+    static String jsonString(String value) {
+        if(value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for(char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
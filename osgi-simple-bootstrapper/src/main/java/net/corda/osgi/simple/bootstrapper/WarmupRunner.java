@@ -0,0 +1,135 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import net.corda.osgi.simple.bootstrapper.api.Warmup;
+import net.corda.osgi.simple.bootstrapper.api.metrics.MetricRegistry;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the {@link Warmup} services on a pool of their own, the first caller of {@link #await()} runs them
+ * while the other callers wait for them to complete. Each warmup is recorded as a {@code warmup} span
+ * of the {@link StartupTimeline} and its duration is published in the {@link MetricRegistry}
+ */
+final class WarmupRunner {
+    private static final Logger log = Logger.getLogger(WarmupRunner.class.getName());
+
+    private final BundleContext ctx;
+    private final MetricRegistry metrics;
+    private final long budgetMillis;
+    private final int threads;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    WarmupRunner(BundleContext ctx, MetricRegistry metrics) {
+        this(ctx, metrics,
+                BootstrapperSettings.getLong(BootstrapperSettings.WARMUP_BUDGET, 10000L),
+                BootstrapperSettings.getInt(BootstrapperSettings.WARMUP_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    WarmupRunner(BundleContext ctx, MetricRegistry metrics, long budgetMillis, int threads) {
+        this.ctx = ctx;
+        this.metrics = metrics;
+        this.budgetMillis = budgetMillis;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns once the warmups have completed or the time budget is exhausted
+     */
+    void await() {
+        if(started.compareAndSet(false, true)) {
+            try {
+                run();
+            } catch (Throwable t) {
+                log.log(Level.WARNING, t, () -> "Error running the warmups");
+            } finally {
+                done.complete(null);
+            }
+        } else {
+            done.join();
+        }
+    }
+
+    private static String warmupName(ServiceReference<?> ref) {
+        Object componentName = ref.getProperty("component.name");
+        String bundleName = ref.getBundle() == null ? "unknown" : ActivationScheduler.bundleName(ref.getBundle());
+        return componentName == null ? bundleName + "#" + ref.getProperty(org.osgi.framework.Constants.SERVICE_ID) :
+                bundleName + ":" + componentName;
+    }
+
+    private void run() throws InvalidSyntaxException, InterruptedException {
+        Collection<ServiceReference<Warmup>> references = budgetMillis <= 0 ? Collections.emptyList() :
+                ctx.getServiceReferences(Warmup.class, null);
+        if(references.isEmpty()) {
+            return;
+        }
+        StartupTimeline timeline = StartupTimeline.get();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, references.size())), new NamedThreadFactory("warmup"));
+        List<String> names = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try(StartupTimeline.Span span = timeline.begin("warmup.all")) {
+            for(ServiceReference<Warmup> ref : references) {
+                String name = warmupName(ref);
+                names.add(name);
+                futures.add(executor.submit(() -> {
+                    Warmup warmup = ctx.getService(ref);
+                    if(warmup == null) {
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    try(StartupTimeline.Span warmupSpan = timeline.begin("warmup", name)) {
+                        warmup.warmup();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception ex) {
+                        log.log(Level.WARNING, ex, () -> String.format("Warmup '%s' failed", name));
+                    } finally {
+                        double seconds = (System.nanoTime() - start) / 1e9;
+                        metrics.gauge("osgi_warmup_seconds", "Duration of each warmup", () -> seconds, "warmup", name);
+                        log.fine(() -> String.format("Warmup '%s' took %.3f s", name, seconds));
+                        try {
+                            ctx.ungetService(ref);
+                        } catch (IllegalStateException ise) {
+                            // the bundle context is no longer valid once the framework has stopped
+                        }
+                    }
+                }));
+            }
+            executor.shutdown();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+            List<String> pending = new ArrayList<>();
+            for(int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ex) {
+                    pending.add(names.get(i));
+                } catch (ExecutionException ex) {
+                    log.log(Level.WARNING, ex.getCause(), () -> "Error running the warmups");
+                }
+            }
+            if(!pending.isEmpty()) {
+                log.warning(() -> String.format("Warmup budget of %d ms exhausted, interrupting %s",
+                        budgetMillis, String.join(", ", pending)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
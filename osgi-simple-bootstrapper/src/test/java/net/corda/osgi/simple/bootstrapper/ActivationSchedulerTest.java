@@ -0,0 +1,167 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class ActivationSchedulerTest {
+
+    // the providers of each bundle, a bundle without an entry is not resolved
+    private final Map<Bundle, List<Bundle>> wiring = new HashMap<>();
+
+    private Bundle bundle(long id) {
+        return (Bundle) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Bundle.class}, (proxy, method, args) -> {
+            switch(method.getName()) {
+                case "getBundleId":
+                    return id;
+                case "getSymbolicName":
+                    return "bundle" + id;
+                case "getVersion":
+                    return Version.emptyVersion;
+                case "adapt":
+                    return args[0] == BundleWiring.class && wiring.containsKey(proxy) ? wiringOf((Bundle) proxy) : null;
+                case "hashCode":
+                    return Long.hashCode(id);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "bundle" + id;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private BundleWiring wiringOf(Bundle bundle) {
+        return (BundleWiring) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {BundleWiring.class}, (proxy, method, args) -> {
+            if(!"getRequiredWires".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            List<BundleWire> wires = new ArrayList<>();
+            for(Bundle provider : wiring.get(bundle)) {
+                BundleRevision revision = (BundleRevision) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[] {BundleRevision.class}, (p, m, a) -> provider);
+                wires.add((BundleWire) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[] {BundleWire.class}, (p, m, a) -> revision));
+            }
+            return wires;
+        });
+    }
+
+    private void wire(Bundle bundle, Bundle... providers) {
+        wiring.put(bundle, Arrays.asList(providers));
+    }
+
+    /**
+     * Orders the nodes the way the scheduler starts them, one wave at a time
+     */
+    private static List<List<Long>> order(Collection<ActivationScheduler.Node> nodes) {
+        List<List<Long>> result = new ArrayList<>();
+        List<ActivationScheduler.Node> ready = nodes.stream()
+                .filter(it -> it.pendingDependencies.get() == 0)
+                .collect(Collectors.toList());
+        while(!ready.isEmpty()) {
+            List<ActivationScheduler.Node> next = new ArrayList<>();
+            for(ActivationScheduler.Node node : ready) {
+                result.add(node.bundles.stream().map(Bundle::getBundleId).collect(Collectors.toList()));
+                for(ActivationScheduler.Node dependent : node.dependents) {
+                    if(dependent.pendingDependencies.decrementAndGet() == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            ready = next;
+        }
+        return result;
+    }
+
+    private static int indexOf(List<List<Long>> order, long id) {
+        for(int i = 0; i < order.size(); i++) {
+            if(order.get(i).contains(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ActivationScheduler scheduler(Map<Bundle, Set<Bundle>> hints) {
+        return new ActivationScheduler(null, 4, hints);
+    }
+
+    @Test
+    public void providersAreStartedBeforeTheirDependents() {
+        Bundle b1 = bundle(1), b2 = bundle(2), b3 = bundle(3), b4 = bundle(4);
+        wire(b1, b2, b3);
+        wire(b2, b4);
+        wire(b3, b4);
+        wire(b4);
+        Collection<ActivationScheduler.Node> nodes = scheduler(Collections.emptyMap()).buildGraph(Arrays.asList(b1, b2, b3, b4));
+        Assertions.assertEquals(4, nodes.size());
+        List<List<Long>> order = order(nodes);
+        Assertions.assertEquals(4, order.size());
+        Assertions.assertTrue(indexOf(order, 4) < indexOf(order, 2));
+        Assertions.assertTrue(indexOf(order, 4) < indexOf(order, 3));
+        Assertions.assertTrue(indexOf(order, 2) < indexOf(order, 1));
+        Assertions.assertTrue(indexOf(order, 3) < indexOf(order, 1));
+    }
+
+    @Test
+    public void wiresToBundlesOutsideTheBatchAreIgnored() {
+        Bundle b1 = bundle(1), b2 = bundle(2), outside = bundle(3);
+        wire(b1, b2, outside);
+        wire(b2, outside);
+        Collection<ActivationScheduler.Node> nodes = scheduler(Collections.emptyMap()).buildGraph(Arrays.asList(b1, b2));
+        Assertions.assertEquals(Arrays.asList(Collections.singletonList(2L), Collections.singletonList(1L)), order(nodes));
+    }
+
+    @Test
+    public void cyclesAreCollapsedInIdOrder() {
+        Bundle b1 = bundle(1), b2 = bundle(2), b3 = bundle(3), b4 = bundle(4);
+        wire(b4, b3);
+        wire(b3, b2);
+        wire(b2, b3, b1);
+        wire(b1);
+        Collection<ActivationScheduler.Node> nodes = scheduler(Collections.emptyMap()).buildGraph(Arrays.asList(b4, b3, b2, b1));
+        Assertions.assertEquals(Arrays.asList(
+                Collections.singletonList(1L),
+                Arrays.asList(2L, 3L),
+                Collections.singletonList(4L)), order(nodes));
+    }
+
+    @Test
+    public void liveWiringTakesPrecedenceOverHints() {
+        Bundle b1 = bundle(1), b2 = bundle(2);
+        wire(b1, b2);
+        wire(b2);
+        // stale build time wiring, the other way round
+        Map<Bundle, Set<Bundle>> hints = new HashMap<>();
+        hints.put(b2, Collections.singleton(b1));
+        Collection<ActivationScheduler.Node> nodes = scheduler(hints).buildGraph(Arrays.asList(b1, b2));
+        Assertions.assertEquals(Arrays.asList(Collections.singletonList(2L), Collections.singletonList(1L)), order(nodes));
+    }
+
+    @Test
+    public void hintsStandInForUnresolvedBundles() {
+        Bundle b1 = bundle(1), b2 = bundle(2);
+        wire(b1);
+        Map<Bundle, Set<Bundle>> hints = new HashMap<>();
+        hints.put(b2, Collections.singleton(b1));
+        Collection<ActivationScheduler.Node> nodes = scheduler(hints).buildGraph(Arrays.asList(b2, b1));
+        Assertions.assertEquals(Arrays.asList(Collections.singletonList(1L), Collections.singletonList(2L)), order(nodes));
+    }
+}
@@ -0,0 +1,89 @@
+package net.corda.osgi.simple.bootstrapper;
+
+import net.corda.osgi.simple.bootstrapper.api.metrics.Counter;
+import net.corda.osgi.simple.bootstrapper.api.metrics.Histogram;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+
+public class MetricRegistryImplTest {
+
+    private final MetricRegistryImpl registry = new MetricRegistryImpl();
+
+    private String prometheus() throws Exception {
+        StringWriter writer = new StringWriter();
+        registry.writePrometheus(writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void sameLabelsReturnTheSameMetric() {
+        Counter counter = registry.counter("requests_total", "Requests", "method", "GET");
+        Assertions.assertSame(counter, registry.counter("requests_total", "Requests", "method", "GET"));
+        Assertions.assertNotSame(counter, registry.counter("requests_total", "Requests", "method", "POST"));
+    }
+
+    @Test
+    public void familyKeepsItsType() {
+        registry.counter("requests_total", "Requests", "method", "GET");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> registry.histogram("requests_total", "Requests", new double[] {1.0}, "method", "POST"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> registry.gauge("requests_total", "Requests", () -> 1.0));
+        registry.remove("requests_total", "method", "GET");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> registry.gauge("requests_total", "Requests", () -> 1.0));
+    }
+
+    @Test
+    public void invalidNamesAreRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.counter("1requests", "Requests"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.counter("requests", "Requests", "1method", "GET"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.counter("requests", "Requests", "method"));
+    }
+
+    @Test
+    public void prometheusFamiliesAreGroupedUnderOneHeader() throws Exception {
+        registry.counter("b_total", "B", "kind", "y").add(2);
+        registry.gauge("a", "A", () -> 1.5);
+        registry.counter("b_total", "B", "kind", "x").increment();
+        Assertions.assertEquals(String.join("\n",
+                "# HELP a A",
+                "# TYPE a gauge",
+                "a 1.5",
+                "# HELP b_total B",
+                "# TYPE b_total counter",
+                "b_total{kind=\"x\"} 1",
+                "b_total{kind=\"y\"} 2",
+                ""), prometheus());
+    }
+
+    @Test
+    public void prometheusEscapesLabelValuesAndHelp() throws Exception {
+        registry.counter("c_total", "Line one\nback\\slash", "path", "C:\\dir\n\"quoted\"").increment();
+        Assertions.assertEquals(String.join("\n",
+                "# HELP c_total Line one\\nback\\\\slash",
+                "# TYPE c_total counter",
+                "c_total{path=\"C:\\\\dir\\n\\\"quoted\\\"\"} 1",
+                ""), prometheus());
+    }
+
+    @Test
+    public void prometheusHistogramBucketsAreCumulative() throws Exception {
+        Histogram histogram = registry.histogram("latency_seconds", "Latency", new double[] {0.1, 1.0}, "op", "read");
+        histogram.record(0.05);
+        histogram.record(0.1);
+        histogram.record(0.5);
+        histogram.record(2.0);
+        Assertions.assertEquals(String.join("\n",
+                "# HELP latency_seconds Latency",
+                "# TYPE latency_seconds histogram",
+                "latency_seconds_bucket{op=\"read\",le=\"0.1\"} 2",
+                "latency_seconds_bucket{op=\"read\",le=\"1\"} 3",
+                "latency_seconds_bucket{op=\"read\",le=\"+Inf\"} 4",
+                "latency_seconds_sum{op=\"read\"} 2.65",
+                "latency_seconds_count{op=\"read\"} 4",
+                ""), prometheus());
+    }
+}
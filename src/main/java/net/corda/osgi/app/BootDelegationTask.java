@@ -0,0 +1,291 @@
+package net.corda.osgi.app;
+
+import aQute.bnd.header.Attrs;
+import aQute.bnd.header.OSGiHeader;
+import aQute.bnd.header.Parameters;
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Descriptors;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.Resource;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Finds the packages of the JDK and of the system bundle that the bundles use the most and writes
+ * an {@code org.osgi.framework.bootdelegation} list made of them, so that the classes of those packages
+ * are loaded straight from the parent class loader instead of going through the wiring of the importing bundle.
+ * The classes referenced by the bytecode of the bundles are used as a measure of how often
+ * each package is loaded; the classes loaded through reflection are not accounted for.
+ * A package is left out when a bundle exports it or contains some of its classes, since boot delegation
+ * would silently replace the bundle's copy with the one of the parent class loader.
+ */
+@CacheableTask
+public class BootDelegationTask extends DefaultTask {
+
+    static final String BOOT_DELEGATION = "org.osgi.framework.bootdelegation";
+    static final String BUNDLE_PARENT = "org.osgi.framework.bundle.parent";
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * The bundles to analyse, already filtered by {@link BundleFilterTransform}
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NAME_ONLY)})
+    private final ConfigurableFileCollection bundles;
+
+    @Getter(onMethod_ = {@InputFile, @Optional, @PathSensitive(PathSensitivity.NONE)})
+    private final RegularFileProperty systemPackagesFile;
+
+    /**
+     * The packages of the JDK the application runs on, as listed by {@link JdkPackagesTask}
+     */
+    @Getter(onMethod_ = {@InputFile, @PathSensitive(PathSensitivity.NONE)})
+    private final RegularFileProperty jdkPackagesFile;
+
+    /**
+     * Minimum number of classes that have to reference a package for it to be boot delegated
+     */
+    @Getter(onMethod_ = @Input)
+    private final Property<Integer> threshold;
+
+    /**
+     * Value of {@code org.osgi.framework.bundle.parent}, the class loader boot delegation is performed against
+     */
+    @Getter(onMethod_ = @Input)
+    private final Property<String> bundleParent;
+
+    /**
+     * Boot delegation list configured explicitly, kept ahead of the computed one
+     */
+    @Getter(onMethod_ = {@Input, @Optional})
+    private final Property<String> configuredBootDelegation;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty reportFile;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty outputFile;
+
+    @Inject
+    public BootDelegationTask(ObjectFactory objects) {
+        bundles = objects.fileCollection();
+        systemPackagesFile = objects.fileProperty();
+        jdkPackagesFile = objects.fileProperty();
+        threshold = objects.property(Integer.class).convention(10);
+        bundleParent = objects.property(String.class).convention("boot");
+        configuredBootDelegation = objects.property(String.class);
+        reportFile = objects.fileProperty();
+        outputFile = objects.fileProperty();
+    }
+
+    private static final class PackageUsage {
+        private final String name;
+        private final Set<String> bundles = new TreeSet<>();
+        // the bundles importing the package with a version constraint
+        private final Set<String> versionedImporters = new TreeSet<>();
+        private int classes;
+
+        private PackageUsage(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Packages the parent class loader selected by {@code org.osgi.framework.bundle.parent} can load
+     */
+    private Set<String> visiblePackages(Set<String> systemPackages) {
+        String parent = bundleParent.get();
+        boolean applicationLoader = "app".equals(parent) || "framework".equals(parent);
+        Set<String> result = new HashSet<>();
+        JdkPackagesTask.read(jdkPackagesFile.get().getAsFile()).forEach((packageName, loader) -> {
+            boolean visible = JdkPackageLister.BOOT_LOADER.equals(loader) ||
+                    ("ext".equals(parent) && JdkPackageLister.EXT_LOADER.equals(loader)) || applicationLoader;
+            if(visible) {
+                result.add(packageName);
+            }
+        });
+        // the packages on the classpath of the bootstrapper are only visible from the application class loader
+        if(applicationLoader) {
+            result.addAll(systemPackages);
+        }
+        return result;
+    }
+
+    @SneakyThrows
+    private Set<String> systemPackages() {
+        Set<String> result = new HashSet<>();
+        if(systemPackagesFile.isPresent()) {
+            for(String line : Files.readAllLines(systemPackagesFile.get().getAsFile().toPath(), StandardCharsets.UTF_8)) {
+                for(String packageName : OSGiHeader.parseHeader(line).keySet()) {
+                    result.add(Processor.removeDuplicateMarker(packageName));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String bundleName(File file, Attributes attributes) {
+        String symbolicName = attributes.getValue(Constants.BUNDLE_SYMBOLICNAME);
+        return symbolicName == null ? file.getName() : OSGiHeader.parseHeader(symbolicName).keySet().iterator().next();
+    }
+
+    @TaskAction
+    @SneakyThrows
+    public void run() {
+        Set<String> systemPackages = systemPackages();
+        Set<String> visiblePackages = visiblePackages(systemPackages);
+        Map<String, PackageUsage> usages = new HashMap<>();
+        // packages provided by a bundle, mapped to the names of those bundles
+        Map<String, Set<String>> bundlePackages = new TreeMap<>();
+        for(File file : bundles) {
+            Manifest manifest;
+            try(JarFile jarFile = new JarFile(file, false)) {
+                manifest = jarFile.getManifest();
+            }
+            if(manifest == null) {
+                getLogger().warn("{} has no manifest, it is left out of the boot delegation analysis", file);
+                continue;
+            }
+            Attributes attributes = manifest.getMainAttributes();
+            String bundleName = bundleName(file, attributes);
+            for(String exported : OSGiHeader.parseHeader(attributes.getValue(Constants.EXPORT_PACKAGE)).keySet()) {
+                bundlePackages.computeIfAbsent(Processor.removeDuplicateMarker(exported), it -> new TreeSet<>()).add(bundleName);
+            }
+            Parameters imports = OSGiHeader.parseHeader(attributes.getValue(Constants.IMPORT_PACKAGE));
+            Map<String, Attrs> importedPackages = new HashMap<>();
+            imports.forEach((key, attrs) -> importedPackages.put(Processor.removeDuplicateMarker(key), attrs));
+            try(Analyzer analyzer = new Analyzer(new Jar(file))) {
+                for(Map.Entry<String, Resource> entry : analyzer.getJar().getResources().entrySet()) {
+                    String path = entry.getKey();
+                    if(!path.endsWith(CLASS_SUFFIX) || path.startsWith("META-INF/") || path.endsWith("module-info.class")) {
+                        continue;
+                    }
+                    int slash = path.lastIndexOf('/');
+                    if(slash > 0) {
+                        bundlePackages.computeIfAbsent(path.substring(0, slash).replace('/', '.'),
+                                it -> new TreeSet<>()).add(bundleName);
+                    }
+                    Clazz clazz = new Clazz(analyzer, path, entry.getValue());
+                    clazz.parseClassFile();
+                    for(Descriptors.PackageRef packageRef : clazz.getReferred()) {
+                        String packageName = packageRef.getFQN();
+                        Attrs importAttrs = importedPackages.get(packageName);
+                        // java.* is always delegated, the packages that are not imported can't be loaded anyway
+                        if(packageRef.isJava() || importAttrs == null || !visiblePackages.contains(packageName)) {
+                            continue;
+                        }
+                        PackageUsage usage = usages.computeIfAbsent(packageName, PackageUsage::new);
+                        usage.classes++;
+                        usage.bundles.add(bundleName);
+                        if(importAttrs.containsKey(Constants.VERSION_ATTRIBUTE)) {
+                            usage.versionedImporters.add(bundleName);
+                        }
+                    }
+                }
+            }
+        }
+
+        List<PackageUsage> sorted = new ArrayList<>(usages.values());
+        sorted.sort(Comparator.comparingInt((PackageUsage it) -> it.classes).reversed()
+                .thenComparing(it -> it.name));
+        List<PackageUsage> selected = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        for(PackageUsage usage : sorted) {
+            if(usage.classes < threshold.get()) {
+                continue;
+            }
+            Set<String> providers = bundlePackages.get(usage.name);
+            if(providers != null) {
+                warnings.add(String.format("%s left out, it is also provided by %s", usage.name, String.join(", ", providers)));
+                continue;
+            }
+            selected.add(usage);
+            if(usage.name.startsWith("sun.") || usage.name.startsWith("com.sun.") || usage.name.startsWith("jdk.")) {
+                warnings.add(String.format("%s is specific to the JDK implementation and may be missing on other JVMs", usage.name));
+            }
+            if(!usage.versionedImporters.isEmpty()) {
+                warnings.add(String.format("%s is imported with a version constraint by %s, boot delegation ignores it",
+                        usage.name, String.join(", ", usage.versionedImporters)));
+            }
+            if(systemPackages.contains(usage.name)) {
+                warnings.add(String.format("%s comes from the classpath of the bootstrapper, bundles will load it " +
+                        "even without importing it", usage.name));
+            }
+        }
+
+        Set<String> bootDelegation = new LinkedHashSet<>();
+        if(configuredBootDelegation.isPresent()) {
+            for(String entry : configuredBootDelegation.get().split(",")) {
+                if(!entry.trim().isEmpty()) {
+                    bootDelegation.add(entry.trim());
+                }
+            }
+        }
+        for(PackageUsage usage : selected) {
+            bootDelegation.add(usage.name);
+        }
+        OsgiAppUtils.writeProperties(outputFile.get().getAsFile(), bootDelegation.isEmpty() ? Collections.emptyMap() :
+                Collections.singletonMap(BOOT_DELEGATION, String.join(",", bootDelegation)));
+
+        File report = reportFile.get().getAsFile();
+        Files.createDirectories(report.getParentFile().toPath());
+        try(PrintWriter pw = new PrintWriter(Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8))) {
+            int totalClasses = sorted.stream().mapToInt(it -> it.classes).sum();
+            int savedClasses = selected.stream().mapToInt(it -> it.classes).sum();
+            pw.printf("Boot delegation analysis, parent class loader '%s', threshold %d referencing classes%n",
+                    bundleParent.get(), threshold.get());
+            pw.printf("%d of the %d class references to imported JDK and system packages skip the bundle wiring%n",
+                    savedClasses, totalClasses);
+            pw.println();
+            pw.printf("%8s %8s  %s%n", "classes", "bundles", "package");
+            for(PackageUsage usage : sorted) {
+                pw.printf("%8d %8d  %s%s%n", usage.classes, usage.bundles.size(), usage.name,
+                        selected.contains(usage) ? " (delegated)" : "");
+            }
+            pw.println();
+            pw.println("Warnings:");
+            for(String warning : warnings) {
+                pw.println("    " + warning);
+            }
+            pw.println("    classes loaded through reflection, such as Class.forName, are not accounted for");
+        }
+        getLogger().info("{} packages added to {}, see {}", selected.size(), BOOT_DELEGATION, report);
+    }
+}
@@ -1,47 +1,197 @@
 package net.corda.osgi.app;
 
+import lombok.Getter;
 import lombok.SneakyThrows;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 
-import java.io.BufferedWriter;
+import javax.inject.Inject;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarFile;
+import java.util.stream.Collectors;
 
+/**
+ * Writes the list of the bundles to install, when {@link #getResolve()} is true the bundles are resolved
+ * against each other and against the system bundle so that missing dependencies fail the build,
+ * the list is then sorted so that every bundle comes after the bundles it is wired to
+ * and the wiring itself is saved in {@code bundle_wiring} as a hint for the bootstrapper.
+ * The bundles are processed in file name order, so that the outputs don't depend on the order of the inputs
+ */
+@CacheableTask
 public class BundleFileTask extends DefaultTask {
 
-    private final File systemBundleFile;
-    private final List<File> bundles;
+    private static final String FRAMEWORK_FACTORY_SERVICE = "META-INF/services/org.osgi.framework.launch.FrameworkFactory";
 
-    public BundleFileTask() {
-        systemBundleFile = new File(getTemporaryDir(), "bundle_list");
-        bundles = new ArrayList<>();
-    }
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty outputFile;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty wiringFile;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty indexFile;
+
+    /**
+     * The bundles to install, already filtered by {@link BundleFilterTransform}
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NAME_ONLY)})
+    private final ConfigurableFileCollection bundles;
+
+    @Getter(onMethod_ = @Input)
+    private final Property<Boolean> resolve;
+
+    @Getter(onMethod_ = {@InputFile, @Optional, @PathSensitive(PathSensitivity.NONE)})
+    private final RegularFileProperty systemPackagesFile;
+
+    /**
+     * Packages of the JDK the application runs on, written by {@link JdkPackagesTask}
+     */
+    @Getter(onMethod_ = {@InputFile, @Optional, @PathSensitive(PathSensitivity.NONE)})
+    private final RegularFileProperty jdkPackagesFile;
+
+    /**
+     * Classpath of the bootstrapper, the packages exported by the OSGi framework found here are
+     * considered provided by the system bundle
+     */
+    @Getter(onMethod_ = @Classpath)
+    private final ConfigurableFileCollection frameworkClasspath;
 
-    @OutputFile
-    public File getOutputFile() {
-        return systemBundleFile;
+    @Inject
+    public BundleFileTask(ObjectFactory objects) {
+        outputFile = objects.fileProperty();
+        wiringFile = objects.fileProperty();
+        indexFile = objects.fileProperty();
+        bundles = objects.fileCollection();
+        resolve = objects.property(Boolean.class).convention(true);
+        systemPackagesFile = objects.fileProperty();
+        jdkPackagesFile = objects.fileProperty();
+        frameworkClasspath = objects.fileCollection();
     }
 
+    /**
+     * Same as {@code getBundles().from(file)}
+     */
     public void bundle(File file) {
-        bundles.add(file);
+        bundles.from(file);
+    }
+
+    @SneakyThrows
+    private void addSystemPackages(BundleResolver resolver) {
+        if(systemPackagesFile.isPresent()) {
+            for(String line : Files.readAllLines(systemPackagesFile.get().getAsFile().toPath())) {
+                if(!line.isEmpty()) {
+                    resolver.addSystemPackages(line);
+                }
+            }
+        }
+        for(File file : frameworkClasspath) {
+            if(OsgiAppUtils.isJar(file.getName())) {
+                try(JarFile jarFile = new JarFile(file)) {
+                    if(jarFile.getEntry(FRAMEWORK_FACTORY_SERVICE) != null && jarFile.getManifest() != null) {
+                        String exports = jarFile.getManifest().getMainAttributes()
+                                .getValue(org.osgi.framework.Constants.EXPORT_PACKAGE);
+                        if(exports != null) {
+                            resolver.addSystemPackages(exports);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @SneakyThrows
+    private static String sha256(File file) {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        try(InputStream inputStream = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[0x10000];
+            int read;
+            while((read = inputStream.read(buffer)) >= 0) {
+                md.update(buffer, 0, read);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for(byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
     }
 
     @TaskAction
     @SneakyThrows
     public void run() {
-        try(BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(systemBundleFile)))) {
-            for(File bundleFile : bundles) {
-                try(JarFile jarFile = new JarFile(bundleFile)) {
-                    if(OsgiAppUtils.isBundle(jarFile)) {
-                        writer.write("bundles/" + bundleFile.getName());
-                        writer.newLine();
+        List<File> bundleFiles = new ArrayList<>(bundles.getFiles());
+        bundleFiles.sort(Comparator.comparing(File::getName));
+        Map<File, Set<File>> providers = new HashMap<>();
+        if(resolve.get()) {
+            BundleResolver resolver = new BundleResolver(bundleFiles);
+            addSystemPackages(resolver);
+            if(jdkPackagesFile.isPresent()) {
+                resolver.addJdkPackages(JdkPackagesTask.read(jdkPackagesFile.get().getAsFile()).keySet());
+            }
+            BundleResolver.Result result = resolver.resolve();
+            if(!result.getErrors().isEmpty()) {
+                StringBuilder sb = new StringBuilder("Unable to resolve the application bundles:");
+                result.getErrors().forEach((bundle, reasons) -> {
+                    sb.append(System.lineSeparator()).append("  ").append(bundle).append(':');
+                    for(String reason : reasons) {
+                        sb.append(System.lineSeparator()).append("    - ").append(reason);
                     }
+                });
+                throw new GradleException(sb.toString());
+            }
+            bundleFiles = result.getBundles().stream()
+                    .map(BundleResolver.BundleDescriptor::getFile)
+                    .collect(Collectors.toList());
+            result.getProviders().forEach((bundle, bundleProviders) -> providers.put(bundle.getFile(),
+                    bundleProviders.stream().map(BundleResolver.BundleDescriptor::getFile).collect(Collectors.toSet())));
+        }
+        Map<File, Integer> indexes = new HashMap<>();
+        try(Writer writer = Files.newBufferedWriter(outputFile.get().getAsFile().toPath(), StandardCharsets.UTF_8)) {
+            for(File bundleFile : bundleFiles) {
+                indexes.put(bundleFile, indexes.size());
+                writer.write("bundles/" + bundleFile.getName() + '\n');
+            }
+        }
+        // lets the bootstrapper find the bundles in the central directory of its jar and key its cache without reading them
+        try(Writer writer = Files.newBufferedWriter(indexFile.get().getAsFile().toPath(), StandardCharsets.UTF_8)) {
+            for(File bundleFile : bundleFiles) {
+                writer.write(sha256(bundleFile) + " " + bundleFile.length() + " bundles/" + bundleFile.getName() + '\n');
+            }
+        }
+        // each line holds the index of a bundle in bundle_list followed by the indexes of its providers
+        try(Writer writer = Files.newBufferedWriter(wiringFile.get().getAsFile().toPath(), StandardCharsets.UTF_8)) {
+            for(File bundleFile : bundleFiles) {
+                if(providers.containsKey(bundleFile)) {
+                    writer.write(indexes.get(bundleFile) + ":" + providers.get(bundleFile).stream()
+                            .map(indexes::get)
+                            .sorted()
+                            .map(Object::toString)
+                            .collect(Collectors.joining(",")) + '\n');
                 }
             }
         }
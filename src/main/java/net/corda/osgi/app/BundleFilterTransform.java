@@ -0,0 +1,58 @@
+package net.corda.osgi.app;
+
+import lombok.SneakyThrows;
+import org.gradle.api.artifacts.transform.InputArtifact;
+import org.gradle.api.artifacts.transform.TransformAction;
+import org.gradle.api.artifacts.transform.TransformOutputs;
+import org.gradle.api.artifacts.transform.TransformParameters;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+
+import java.io.File;
+import java.util.jar.JarFile;
+
+/**
+ * Keeps the jar artifacts that are OSGi bundles and drops the other ones, so that each artifact
+ * is classified once and the result is reused by every build through Gradle's transform cache
+ */
+public abstract class BundleFilterTransform implements TransformAction<TransformParameters.None> {
+
+    static final Attribute<String> ARTIFACT_TYPE_ATTRIBUTE = Attribute.of("artifactType", String.class);
+
+    /**
+     * Set to false on the jar artifact type, the {@code bundles} configuration is viewed with this attribute set to true
+     */
+    static final Attribute<Boolean> BUNDLE_ATTRIBUTE = Attribute.of("net.corda.osgi.bundle", Boolean.class);
+
+    /**
+     * Tells whether a file is a jar with an OSGi bundle manifest, also applied to the project jar
+     * that is not resolved through a configuration and so can't be transformed
+     */
+    static final class BundleSpec implements Spec<File> {
+        @Override
+        @SneakyThrows
+        public boolean isSatisfiedBy(File file) {
+            if(file.isFile() && OsgiAppUtils.isJar(file.getName())) {
+                try(JarFile jarFile = new JarFile(file, false)) {
+                    return jarFile.getManifest() != null && OsgiAppUtils.isBundle(jarFile);
+                }
+            }
+            return false;
+        }
+    }
+
+    @InputArtifact
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract Provider<FileSystemLocation> getInputArtifact();
+
+    @Override
+    public void transform(TransformOutputs outputs) {
+        if(new BundleSpec().isSatisfiedBy(getInputArtifact().get().getAsFile())) {
+            outputs.file(getInputArtifact());
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package net.corda.osgi.app;
+
+import aQute.bnd.header.Attrs;
+import aQute.bnd.header.OSGiHeader;
+import aQute.bnd.header.Parameters;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.version.Version;
+import aQute.bnd.version.VersionRange;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+
+/**
+ * Package level resolution of a set of bundles, performed at build time to detect missing
+ * dependencies early and to compute an installation order where every bundle comes after
+ * the bundles it is wired to
+ */
+final class BundleResolver {
+
+    private static final Set<String> SYSTEM_BUNDLE_NAMES = new HashSet<>(
+            Arrays.asList(org.osgi.framework.Constants.SYSTEM_BUNDLE_SYMBOLICNAME, "org.apache.felix.framework"));
+
+    @Getter
+    static final class BundleDescriptor {
+        private final int index;
+        private final File file;
+        private final String symbolicName;
+        private final Version version;
+        private final Map.Entry<String, Attrs> fragmentHost;
+        private final Parameters exports;
+        private final Parameters imports;
+        private final Parameters requiredBundles;
+
+        @SneakyThrows
+        private BundleDescriptor(int index, File file) {
+            this.index = index;
+            this.file = file;
+            try(JarFile jarFile = new JarFile(file, false)) {
+                Attributes attributes = jarFile.getManifest().getMainAttributes();
+                symbolicName = OSGiHeader.parseHeader(attributes.getValue(Constants.BUNDLE_SYMBOLICNAME))
+                        .keySet().iterator().next();
+                version = Version.parseVersion(attributes.getValue(Constants.BUNDLE_VERSION));
+                Parameters host = OSGiHeader.parseHeader(attributes.getValue(Constants.FRAGMENT_HOST));
+                fragmentHost = host.isEmpty() ? null : host.entrySet().iterator().next();
+                exports = OSGiHeader.parseHeader(attributes.getValue(Constants.EXPORT_PACKAGE));
+                imports = OSGiHeader.parseHeader(attributes.getValue(Constants.IMPORT_PACKAGE));
+                requiredBundles = OSGiHeader.parseHeader(attributes.getValue(Constants.REQUIRE_BUNDLE));
+            }
+        }
+
+        boolean isFragment() {
+            return fragmentHost != null;
+        }
+
+        @Override
+        public String toString() {
+            return symbolicName + "-" + version + " (" + file.getName() + ")";
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Export {
+        // null when the package is exported by the system bundle
+        private final BundleDescriptor exporter;
+        private final Version version;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    static final class Result {
+        // bundles sorted so that providers come before the bundles wired to them
+        private final List<BundleDescriptor> bundles;
+        // providers of each bundle, fragments are replaced by their host and framework extensions left out
+        private final Map<BundleDescriptor, Set<BundleDescriptor>> providers;
+        // reasons why each bundle failed to resolve
+        private final Map<BundleDescriptor, List<String>> errors;
+    }
+
+    private final List<BundleDescriptor> bundles = new ArrayList<>();
+    private final Map<String, List<Export>> systemExports = new HashMap<>();
+    private final Set<String> jdkPackages = new HashSet<>();
+
+    BundleResolver(Collection<File> bundleFiles) {
+        int i = 0;
+        for(File file : bundleFiles) {
+            bundles.add(new BundleDescriptor(i++, file));
+        }
+    }
+
+    /**
+     * Adds the packages of the JDK the application runs on, the imports of those packages that the system bundle
+     * doesn't export are not reported as missing
+     */
+    void addJdkPackages(Collection<String> packageNames) {
+        jdkPackages.addAll(packageNames);
+    }
+
+    /**
+     * Adds the packages exported by the system bundle, {@code exportClauses} uses the syntax of the Export-Package header
+     */
+    void addSystemPackages(String exportClauses) {
+        for(Map.Entry<String, Attrs> entry : OSGiHeader.parseHeader(exportClauses).entrySet()) {
+            systemExports.computeIfAbsent(Processor.removeDuplicateMarker(entry.getKey()), k -> new ArrayList<>())
+                    .add(new Export(null, exportVersion(entry.getValue())));
+        }
+    }
+
+    private static Version exportVersion(Attrs attrs) {
+        String version = attrs.get(Constants.VERSION_ATTRIBUTE);
+        if(version == null) {
+            version = attrs.get(Constants.SPECIFICATION_VERSION);
+        }
+        return version == null ? Version.emptyVersion : Version.parseVersion(version);
+    }
+
+    private static VersionRange versionRange(Attrs attrs, String attributeName) {
+        String range = attrs.get(attributeName);
+        return range == null ? null : new VersionRange(range);
+    }
+
+    private static boolean isOptional(Attrs attrs) {
+        return org.osgi.framework.Constants.RESOLUTION_OPTIONAL.equals(attrs.get(Constants.RESOLUTION_DIRECTIVE));
+    }
+
+    private BundleDescriptor findBundle(Set<BundleDescriptor> candidates, Map.Entry<String, Attrs> requirement) {
+        String symbolicName = Processor.removeDuplicateMarker(requirement.getKey());
+        VersionRange range = versionRange(requirement.getValue(), Constants.BUNDLE_VERSION_ATTRIBUTE);
+        return candidates.stream()
+                .filter(it -> !it.isFragment())
+                .filter(it -> it.symbolicName.equals(symbolicName))
+                .filter(it -> range == null || range.includes(it.version))
+                .max(Comparator.comparing(BundleDescriptor::getVersion))
+                .orElse(null);
+    }
+
+    Result resolve() {
+        Set<BundleDescriptor> resolvable = new LinkedHashSet<>(bundles);
+        Map<BundleDescriptor, Set<BundleDescriptor>> providers = new HashMap<>();
+        // host of each fragment, the fragments attached to the system bundle have none
+        Map<BundleDescriptor, BundleDescriptor> hosts = new HashMap<>();
+        Map<BundleDescriptor, List<String>> errors = new LinkedHashMap<>();
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            Map<String, List<Export>> exports = new HashMap<>(systemExports);
+            for(BundleDescriptor bundle : resolvable) {
+                for(Map.Entry<String, Attrs> entry : bundle.exports.entrySet()) {
+                    String packageName = Processor.removeDuplicateMarker(entry.getKey());
+                    List<Export> packageExports = new ArrayList<>(exports.getOrDefault(packageName, new ArrayList<>()));
+                    packageExports.add(new Export(bundle, exportVersion(entry.getValue())));
+                    exports.put(packageName, packageExports);
+                }
+            }
+            for(BundleDescriptor bundle : new ArrayList<>(resolvable)) {
+                List<String> bundleErrors = new ArrayList<>();
+                Set<BundleDescriptor> bundleProviders = new LinkedHashSet<>();
+                if(bundle.isFragment() && !SYSTEM_BUNDLE_NAMES.contains(bundle.fragmentHost.getKey())) {
+                    BundleDescriptor host = findBundle(resolvable, bundle.fragmentHost);
+                    if(host == null) {
+                        bundleErrors.add(String.format("missing fragment host '%s'", bundle.fragmentHost.getKey()));
+                    } else {
+                        hosts.put(bundle, host);
+                        bundleProviders.add(host);
+                    }
+                }
+                for(Map.Entry<String, Attrs> entry : bundle.requiredBundles.entrySet()) {
+                    String symbolicName = Processor.removeDuplicateMarker(entry.getKey());
+                    if(SYSTEM_BUNDLE_NAMES.contains(symbolicName)) continue;
+                    BundleDescriptor provider = findBundle(resolvable, entry);
+                    if(provider != null) {
+                        bundleProviders.add(provider);
+                    } else if(!isOptional(entry.getValue())) {
+                        bundleErrors.add(String.format("missing required bundle '%s'", symbolicName));
+                    }
+                }
+                for(Map.Entry<String, Attrs> entry : bundle.imports.entrySet()) {
+                    String packageName = Processor.removeDuplicateMarker(entry.getKey());
+                    if(packageName.startsWith("java.")) continue;
+                    VersionRange range = versionRange(entry.getValue(), Constants.VERSION_ATTRIBUTE);
+                    Export match = exports.getOrDefault(packageName, new ArrayList<>()).stream()
+                            .filter(it -> range == null || range.includes(it.version))
+                            // the framework prefers the system bundle, then the highest version
+                            .max(Comparator.<Export, Boolean>comparing(it -> it.exporter == null)
+                                    .thenComparing(it -> it.version))
+                            .orElse(null);
+                    if(match != null) {
+                        if(match.exporter != null && match.exporter != bundle) {
+                            bundleProviders.add(match.exporter);
+                        }
+                    } else if(!jdkPackages.contains(packageName) && !isOptional(entry.getValue())) {
+                        bundleErrors.add(String.format("missing package '%s'%s", packageName,
+                                range == null ? "" : " with version " + range));
+                    }
+                }
+                if(bundleErrors.isEmpty()) {
+                    providers.put(bundle, bundleProviders);
+                } else {
+                    resolvable.remove(bundle);
+                    providers.remove(bundle);
+                    errors.put(bundle, bundleErrors);
+                    changed = true;
+                }
+            }
+        }
+        // the packages of a fragment are provided by its host, the ones of a framework extension by the system bundle
+        for(Map.Entry<BundleDescriptor, Set<BundleDescriptor>> entry : providers.entrySet()) {
+            Set<BundleDescriptor> bundleProviders = new LinkedHashSet<>();
+            for(BundleDescriptor provider : entry.getValue()) {
+                BundleDescriptor host = provider.isFragment() ? hosts.get(provider) : provider;
+                if(host != null && host != entry.getKey()) {
+                    bundleProviders.add(host);
+                }
+            }
+            entry.getValue().clear();
+            entry.getValue().addAll(bundleProviders);
+        }
+        return new Result(sort(providers), providers, errors);
+    }
+
+    /**
+     * Sorts the bundles using Tarjan's strongly connected components algorithm,
+     * that emits each component after all the components it depends on
+     */
+    private List<BundleDescriptor> sort(Map<BundleDescriptor, Set<BundleDescriptor>> providers) {
+        List<BundleDescriptor> result = new ArrayList<>();
+        Map<BundleDescriptor, Integer> index = new HashMap<>();
+        Map<BundleDescriptor, Integer> lowLink = new HashMap<>();
+        List<BundleDescriptor> stack = new ArrayList<>();
+        Set<BundleDescriptor> onStack = new HashSet<>();
+        for(BundleDescriptor bundle : bundles) {
+            if(providers.containsKey(bundle) && !index.containsKey(bundle)) {
+                visit(bundle, providers, index, lowLink, stack, onStack, result);
+            }
+        }
+        return result;
+    }
+
+    private static void visit(BundleDescriptor bundle,
+                              Map<BundleDescriptor, Set<BundleDescriptor>> providers,
+                              Map<BundleDescriptor, Integer> index,
+                              Map<BundleDescriptor, Integer> lowLink,
+                              List<BundleDescriptor> stack,
+                              Set<BundleDescriptor> onStack,
+                              List<BundleDescriptor> result) {
+        index.put(bundle, index.size());
+        lowLink.put(bundle, index.get(bundle));
+        stack.add(bundle);
+        onStack.add(bundle);
+        for(BundleDescriptor provider : providers.get(bundle)) {
+            if(!index.containsKey(provider)) {
+                visit(provider, providers, index, lowLink, stack, onStack, result);
+                lowLink.put(bundle, Math.min(lowLink.get(bundle), lowLink.get(provider)));
+            } else if(onStack.contains(provider)) {
+                lowLink.put(bundle, Math.min(lowLink.get(bundle), index.get(provider)));
+            }
+        }
+        if(lowLink.get(bundle).equals(index.get(bundle))) {
+            Set<BundleDescriptor> component = new TreeSet<>(Comparator.comparingInt(BundleDescriptor::getIndex));
+            BundleDescriptor member;
+            do {
+                member = stack.remove(stack.size() - 1);
+                onStack.remove(member);
+                component.add(member);
+            } while(member != bundle);
+            result.addAll(component);
+        }
+    }
+}
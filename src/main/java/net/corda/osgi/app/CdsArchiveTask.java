@@ -0,0 +1,222 @@
+package net.corda.osgi.app;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Transformer;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the application jar once to record the classes it loads and builds a CDS archive out of them,
+ * then runs it again on top of the archive to report which classes are actually served by it
+ */
+public class CdsArchiveTask extends DefaultTask {
+
+    private static final Pattern CLASS_LOAD_PATTERN = Pattern.compile("\\[class,load\\s*] (\\S+) source: (.*)$");
+    private static final String SHARED_SOURCE = "shared objects file";
+
+    // -XX:ArchiveClassesAtExit
+    private static final int DYNAMIC_ARCHIVE_JAVA_VERSION = 13;
+    // archiving the application classes and -Xlog, in OpenJDK
+    private static final int APPLICATION_CDS_JAVA_VERSION = 10;
+
+    @RequiredArgsConstructor
+    private static final class LanguageVersionAtLeast implements Transformer<Boolean, JavaLauncher> {
+        private final int version;
+
+        @Override
+        public Boolean transform(JavaLauncher javaLauncher) {
+            return javaLauncher.getMetadata().getLanguageVersion().canCompileOrRun(version);
+        }
+    }
+
+    @Getter(onMethod_ = {@InputFile, @PathSensitive(PathSensitivity.NONE)})
+    private final RegularFileProperty applicationJar;
+
+    @Getter(onMethod_ = @Nested)
+    private final Property<JavaLauncher> javaLauncher;
+
+    @Getter(onMethod_ = @Input)
+    private final ListProperty<String> trainingArgs;
+
+    @Getter(onMethod_ = @Input)
+    private final ListProperty<String> jvmArgs;
+
+    /**
+     * Creates a dynamic archive when true, a static one built from the recorded class list otherwise.
+     * Defaults to true on the toolchains that support it, JDK 13 and later
+     */
+    @Getter(onMethod_ = @Input)
+    private final Property<Boolean> dynamicArchive;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty archiveFile;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty classListFile;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty coverageReportFile;
+
+    private final ExecOperations execOperations;
+
+    @Inject
+    public CdsArchiveTask(ObjectFactory objects, ExecOperations execOperations) {
+        this.execOperations = execOperations;
+        applicationJar = objects.fileProperty();
+        javaLauncher = objects.property(JavaLauncher.class);
+        trainingArgs = objects.listProperty(String.class).convention(Collections.emptyList());
+        jvmArgs = objects.listProperty(String.class).convention(Collections.emptyList());
+        dynamicArchive = objects.property(Boolean.class).convention(javaLauncher.map(new LanguageVersionAtLeast(DYNAMIC_ARCHIVE_JAVA_VERSION)));
+        archiveFile = objects.fileProperty();
+        classListFile = objects.fileProperty();
+        coverageReportFile = objects.fileProperty();
+    }
+
+    private ExecResult runJava(List<String> jvmArgs, boolean withApplicationArgs) {
+        List<String> args = new ArrayList<>(this.jvmArgs.get());
+        args.addAll(jvmArgs);
+        args.add("-jar");
+        args.add(applicationJar.get().getAsFile().getAbsolutePath());
+        if(withApplicationArgs) {
+            args.addAll(trainingArgs.get());
+        }
+        return execOperations.exec(spec -> {
+            spec.executable(javaLauncher.get().getExecutablePath().getAsFile());
+            spec.args(args);
+            spec.setIgnoreExitValue(true);
+        });
+    }
+
+    private void checkTrainingRun(ExecResult result) {
+        if(result.getExitValue() != 0) {
+            getLogger().warn("CDS training run of '{}' exited with code {}",
+                    applicationJar.get().getAsFile().getName(), result.getExitValue());
+        }
+    }
+
+    @TaskAction
+    @SneakyThrows
+    public void run() {
+        File archive = archiveFile.get().getAsFile();
+        File classList = classListFile.get().getAsFile();
+        File trainingLog = new File(getTemporaryDir(), "training.log");
+        File verificationLog = new File(getTemporaryDir(), "verification.log");
+        Files.deleteIfExists(archive.toPath());
+        if(!new LanguageVersionAtLeast(APPLICATION_CDS_JAVA_VERSION).transform(javaLauncher.get())) {
+            throw new GradleException(String.format("Application class data sharing requires Java %d or later, the toolchain is Java %s",
+                    APPLICATION_CDS_JAVA_VERSION, javaLauncher.get().getMetadata().getLanguageVersion()));
+        }
+
+        List<String> trainingJvmArgs = new ArrayList<>();
+        trainingJvmArgs.add("-XX:DumpLoadedClassList=" + classList.getAbsolutePath());
+        trainingJvmArgs.add("-Xlog:class+load=info:file=" + trainingLog.getAbsolutePath());
+        if(dynamicArchive.get()) {
+            trainingJvmArgs.add("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+            checkTrainingRun(runJava(trainingJvmArgs, true));
+        } else {
+            checkTrainingRun(runJava(trainingJvmArgs, true));
+            List<String> dumpArgs = new ArrayList<>();
+            dumpArgs.add("-Xshare:dump");
+            dumpArgs.add("-XX:SharedClassListFile=" + classList.getAbsolutePath());
+            dumpArgs.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+            runJava(dumpArgs, false).assertNormalExitValue();
+        }
+        if(!archive.exists()) {
+            throw new GradleException(String.format("CDS archive '%s' has not been created", archive));
+        }
+
+        List<String> verificationJvmArgs = new ArrayList<>();
+        verificationJvmArgs.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        verificationJvmArgs.add("-Xlog:class+load=info:file=" + verificationLog.getAbsolutePath());
+        runJava(verificationJvmArgs, true);
+        writeCoverageReport(trainingLog, verificationLog);
+    }
+
+    private static final class Coverage {
+        private int loaded;
+        private int shared;
+    }
+
+    private String category(String source) {
+        if(source.startsWith(SHARED_SOURCE) || source.startsWith("jrt:/")) {
+            return "jdk";
+        } else if(source.contains("!/bundles/")) {
+            return "bundles";
+        } else if(source.startsWith("file:") || source.startsWith("jar:file:")) {
+            return "bootstrapClasspath";
+        } else {
+            return "generated";
+        }
+    }
+
+    @SneakyThrows
+    private static Map<String, String> parseClassLoadLog(File logFile) {
+        Map<String, String> result = new HashMap<>();
+        try(BufferedReader reader = Files.newBufferedReader(logFile.toPath())) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                Matcher matcher = CLASS_LOAD_PATTERN.matcher(line);
+                if(matcher.find()) {
+                    result.putIfAbsent(matcher.group(1), matcher.group(2));
+                }
+            }
+        }
+        return result;
+    }
+
+    @SneakyThrows
+    private void writeCoverageReport(File trainingLog, File verificationLog) {
+        Map<String, String> trainingSources = parseClassLoadLog(trainingLog);
+        Map<String, String> verificationSources = parseClassLoadLog(verificationLog);
+        Map<String, Coverage> coverageByCategory = new TreeMap<>();
+        for(Map.Entry<String, String> entry : trainingSources.entrySet()) {
+            Coverage coverage = coverageByCategory.computeIfAbsent(category(entry.getValue()), k -> new Coverage());
+            coverage.loaded++;
+            String verificationSource = verificationSources.get(entry.getKey());
+            if(verificationSource != null && verificationSource.startsWith(SHARED_SOURCE)) {
+                coverage.shared++;
+            }
+        }
+        try(Writer writer = Files.newBufferedWriter(coverageReportFile.get().getAsFile().toPath())) {
+            for(Map.Entry<String, Coverage> entry : coverageByCategory.entrySet()) {
+                Coverage coverage = entry.getValue();
+                String line = String.format("%s: %d/%d classes served from the CDS archive (%.1f%%)",
+                        entry.getKey(), coverage.shared, coverage.loaded,
+                        coverage.loaded == 0 ? 0.0 : coverage.shared * 100.0 / coverage.loaded);
+                getLogger().lifecycle(line);
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            }
+        }
+    }
+}
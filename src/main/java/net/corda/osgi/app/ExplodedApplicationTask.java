@@ -0,0 +1,121 @@
+package net.corda.osgi.app;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Lays out the metadata of the application jar in a directory, without the bundles: {@code bundle_list}
+ * refers to the bundle jars where Gradle has put them through {@code reference:file:} locations,
+ * so that the bootstrapper can be launched with this directory on its classpath right after a build
+ * and the OSGi framework uses the bundles in place instead of copying them to its cache
+ */
+public class ExplodedApplicationTask extends DefaultTask {
+
+    private static final String BUNDLES_PREFIX = "bundles/";
+    private static final String REFERENCE_PREFIX = "reference:";
+
+    @Getter(onMethod_ = {@InputFile, @PathSensitive(PathSensitivity.NONE)})
+    private final RegularFileProperty bundleListFile;
+
+    @Getter(onMethod_ = {@InputFile, @PathSensitive(PathSensitivity.NONE)})
+    private final RegularFileProperty wiringFile;
+
+    /**
+     * The bundle jars, their absolute path ends up in {@code bundle_list}
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.ABSOLUTE)})
+    private final ConfigurableFileCollection bundles;
+
+    /**
+     * Files copied as they are to {@code META-INF}
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NAME_ONLY)})
+    private final ConfigurableFileCollection metadataFiles;
+
+    @Getter(onMethod_ = {@Input, @Optional})
+    private final Property<String> mainApplicationComponent;
+
+    @Getter(onMethod_ = @OutputDirectory)
+    private final DirectoryProperty outputDirectory;
+
+    private final FileSystemOperations fileSystemOperations;
+
+    @Inject
+    public ExplodedApplicationTask(ObjectFactory objects, FileSystemOperations fileSystemOperations) {
+        this.fileSystemOperations = fileSystemOperations;
+        bundleListFile = objects.fileProperty();
+        wiringFile = objects.fileProperty();
+        bundles = objects.fileCollection();
+        metadataFiles = objects.fileCollection();
+        mainApplicationComponent = objects.property(String.class);
+        outputDirectory = objects.directoryProperty();
+    }
+
+    @TaskAction
+    @SneakyThrows
+    public void run() {
+        fileSystemOperations.delete(spec -> spec.delete(outputDirectory));
+        Path metaInf = outputDirectory.get().dir("META-INF").getAsFile().toPath();
+        Files.createDirectories(metaInf);
+        Map<String, File> bundlesByEntryName = new HashMap<>();
+        for(File bundle : bundles) {
+            bundlesByEntryName.put(BUNDLES_PREFIX + bundle.getName(), bundle);
+        }
+        // same order as the one computed for the application jar, so that bundle_wiring still applies
+        try(BufferedWriter writer = Files.newBufferedWriter(metaInf.resolve("bundle_list"), StandardCharsets.UTF_8)) {
+            for(String line : Files.readAllLines(bundleListFile.get().getAsFile().toPath())) {
+                if(line.isEmpty()) continue;
+                File bundle = bundlesByEntryName.get(line);
+                if(bundle == null) {
+                    throw new GradleException(String.format("Unable to find the file of bundle '%s'", line));
+                }
+                writer.write(REFERENCE_PREFIX + bundle.getAbsoluteFile().toURI());
+                writer.newLine();
+            }
+        }
+        Files.copy(wiringFile.get().getAsFile().toPath(), metaInf.resolve("bundle_wiring"),
+                StandardCopyOption.REPLACE_EXISTING);
+        for(File file : metadataFiles) {
+            Files.copy(file.toPath(), metaInf.resolve(file.getName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if(mainApplicationComponent.isPresent()) {
+            attributes.putValue("Main-Application-Component", mainApplicationComponent.get());
+        }
+        try(OutputStream outputStream = Files.newOutputStream(outputDirectory.get().file(JarFile.MANIFEST_NAME).getAsFile().toPath())) {
+            manifest.write(outputStream);
+        }
+    }
+}
@@ -1,42 +1,73 @@
 package net.corda.osgi.app;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.GradleException;
-import org.gradle.api.artifacts.Configuration;
-import org.gradle.api.provider.Provider;
-import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
 import java.io.File;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.JarFile;
 
-@RequiredArgsConstructor(onConstructor_ = @Inject)
+/**
+ * Fails the build when the OSGi framework API is not part of a classpath. The classpath is looked up
+ * for the class file rather than loaded, the check only runs again when the classpath changes
+ * and its outcome is recorded in a marker file so that it can be cached
+ */
+@CacheableTask
 public class FrameworkRuntimeCheck extends DefaultTask {
 
-    @Getter(onMethod_ = @InputFiles)
-    private final Provider<Configuration> confProvider;
+    private static final String FRAMEWORK_CLASS_FILE = "org/osgi/framework/launch/Framework.class";
+
+    @Getter(onMethod_ = @Input)
+    private final String configurationName;
+
+    @Getter(onMethod_ = @Classpath)
+    private final FileCollection classpath;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty markerFile;
+
+    @Inject
+    public FrameworkRuntimeCheck(String configurationName, FileCollection classpath, ObjectFactory objects) {
+        this.configurationName = configurationName;
+        this.classpath = classpath;
+        markerFile = objects.fileProperty();
+    }
+
+    @SneakyThrows
+    private static String frameworkClassLocation(File file) {
+        if(file.isDirectory()) {
+            return new File(file, FRAMEWORK_CLASS_FILE).isFile() ? file.getName() : null;
+        } else if(file.isFile() && OsgiAppUtils.isJar(file.getName())) {
+            try(JarFile jarFile = new JarFile(file, false)) {
+                return jarFile.getEntry(FRAMEWORK_CLASS_FILE) != null ? file.getName() : null;
+            }
+        }
+        return null;
+    }
 
     @TaskAction
     @SneakyThrows
     void run() {
-        Configuration conf = confProvider.get();
-        Set<File> files = conf.getFiles();
-        URL[] urls = new URL[files.size()];
-        int i = 0;
-        for(File file : files) {
-            urls[i++] = file.toURI().toURL();
-        }
-        try {
-            new URLClassLoader(urls).loadClass("org.osgi.framework.launch.Framework");
-        } catch (ClassNotFoundException cnfe) {
-            throw new GradleException(
-                    String.format("No OSGi framework runtime found in '%s' configuration", conf.getName()));
+        for(File file : classpath) {
+            String location = frameworkClassLocation(file);
+            if(location != null) {
+                Files.write(markerFile.get().getAsFile().toPath(), (location + '\n').getBytes(StandardCharsets.UTF_8));
+                return;
+            }
         }
+        throw new GradleException(
+                String.format("No OSGi framework runtime found in '%s' configuration", configurationName));
     }
 }
@@ -2,8 +2,36 @@ package net.corda.osgi.app;
 
 import lombok.Data;
 
+import java.io.Serializable;
+
+/**
+ * Serializable as it is an input of {@link JavaAgentFileTask}
+ */
 @Data
-public class JavaAgent {
+public class JavaAgent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private final String className;
     private final String args;
+
+    /**
+     * Agents are initialised in ascending order, agents sharing the same order are initialised in declaration order
+     */
+    private final int order;
+
+    /**
+     * Whether the agent can be initialised concurrently with the other concurrent agents of the same order
+     */
+    private final boolean concurrent;
+
+    public JavaAgent(String className, String args, int order, boolean concurrent) {
+        this.className = className;
+        this.args = args;
+        this.order = order;
+        this.concurrent = concurrent;
+    }
+
+    public JavaAgent(String className, String args) {
+        this(className, args, 0, false);
+    }
 }
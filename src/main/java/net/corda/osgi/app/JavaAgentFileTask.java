@@ -3,44 +3,49 @@ package net.corda.osgi.app;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
-import java.io.File;
-import java.io.Writer;
-import java.nio.file.Files;
 import java.util.Collections;
-import java.util.Properties;
+import java.util.HashMap;
+import java.util.Map;
 
+@CacheableTask
 public class JavaAgentFileTask extends DefaultTask {
 
-    @OutputFile
-    public File getOutputFile() {
-        return new File(getTemporaryDir(), "javaAgents.properties");
-    }
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty outputFile;
 
     @Getter(onMethod_ = @Input)
     private final ListProperty<JavaAgent> javaAgents;
 
     @Inject
     public JavaAgentFileTask(ObjectFactory objects) {
+        outputFile = objects.fileProperty();
         javaAgents = objects.listProperty(JavaAgent.class)
-                .convention(getProject().provider(Collections::emptyList));
+                .convention(Collections.emptyList());
     }
 
     @TaskAction
     @SneakyThrows
     public void run() {
-        try(Writer writer = Files.newBufferedWriter(getOutputFile().toPath())) {
-            Properties props = new Properties();
-            for(JavaAgent javaAgent : javaAgents.get()) {
-                props.setProperty(javaAgent.getClassName(), javaAgent.getArgs());
+        Map<String, String> props = new HashMap<>();
+        int index = 0;
+        for(JavaAgent javaAgent : javaAgents.get()) {
+            String prefix = "agent." + index++ + ".";
+            props.put(prefix + "class", javaAgent.getClassName());
+            if(javaAgent.getArgs() != null) {
+                props.put(prefix + "args", javaAgent.getArgs());
             }
-            props.store(writer, null);
+            props.put(prefix + "order", Integer.toString(javaAgent.getOrder()));
+            props.put(prefix + "concurrent", Boolean.toString(javaAgent.isConcurrent()));
         }
+        OsgiAppUtils.writeProperties(outputFile.get().getAsFile(), props);
     }
 }
@@ -0,0 +1,95 @@
+package net.corda.osgi.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Lists the packages exported by the JDK it runs on, each one followed by the class loader defining it, named
+ * after the values of {@code org.osgi.framework.bundle.parent}. It is launched by {@link JdkPackagesTask} with the
+ * Java toolchain of the application, so it sticks to the Java 8 API and looks up the module system reflectively
+ */
+final class JdkPackageLister {
+
+    static final String BOOT_LOADER = "boot";
+    static final String EXT_LOADER = "ext";
+    static final String APP_LOADER = "app";
+
+    private static void listModulePackages(Map<String, String> packages) throws ReflectiveOperationException {
+        Class<?> moduleLayerClass = Class.forName("java.lang.ModuleLayer");
+        Class<?> moduleClass = Class.forName("java.lang.Module");
+        Class<?> descriptorClass = Class.forName("java.lang.module.ModuleDescriptor");
+        Class<?> exportsClass = Class.forName("java.lang.module.ModuleDescriptor$Exports");
+        Method getClassLoader = moduleClass.getMethod("getClassLoader");
+        Method getDescriptor = moduleClass.getMethod("getDescriptor");
+        Method exports = descriptorClass.getMethod("exports");
+        Method isQualified = exportsClass.getMethod("isQualified");
+        Method source = exportsClass.getMethod("source");
+        ClassLoader platformClassLoader = (ClassLoader) ClassLoader.class.getMethod("getPlatformClassLoader").invoke(null);
+        Object bootLayer = moduleLayerClass.getMethod("boot").invoke(null);
+        for(Object module : (Set<?>) moduleLayerClass.getMethod("modules").invoke(bootLayer)) {
+            ClassLoader loader = (ClassLoader) getClassLoader.invoke(module);
+            String loaderName = loader == null ? BOOT_LOADER : loader == platformClassLoader ? EXT_LOADER : APP_LOADER;
+            for(Object export : (Set<?>) exports.invoke(getDescriptor.invoke(module))) {
+                if(!(Boolean) isQualified.invoke(export)) {
+                    packages.putIfAbsent((String) source.invoke(export), loaderName);
+                }
+            }
+        }
+    }
+
+    private static void listJarPackages(File file, String loaderName, Map<String, String> packages) throws IOException {
+        try(JarFile jarFile = new JarFile(file, false)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while(entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                int slash = name.lastIndexOf('/');
+                if(slash > 0 && name.endsWith(".class") && !name.startsWith("META-INF/")) {
+                    packages.putIfAbsent(name.substring(0, slash).replace('/', '.'), loaderName);
+                }
+            }
+        }
+    }
+
+    // Java 8 has no module system, the packages are the ones of the boot classpath and of the extension directories
+    private static void listClasspathPackages(Map<String, String> packages) throws IOException {
+        for(String entry : System.getProperty("sun.boot.class.path", "").split(File.pathSeparator)) {
+            File file = new File(entry);
+            if(file.isFile()) {
+                listJarPackages(file, BOOT_LOADER, packages);
+            }
+        }
+        for(String entry : System.getProperty("java.ext.dirs", "").split(File.pathSeparator)) {
+            File[] files = new File(entry).listFiles((dir, name) -> name.endsWith(".jar"));
+            if(files != null) {
+                for(File file : files) {
+                    listJarPackages(file, EXT_LOADER, packages);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> packages = new TreeMap<>();
+        try {
+            listModulePackages(packages);
+        } catch (ClassNotFoundException ex) {
+            listClasspathPackages(packages);
+        }
+        try(Writer writer = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            for(Map.Entry<String, String> entry : packages.entrySet()) {
+                writer.write(entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package net.corda.osgi.app;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lists the packages of the JDK the application runs on, as opposed to the one running the build,
+ * by launching {@link JdkPackageLister} with the Java toolchain of the project.
+ * Each line of the output holds a package and the class loader defining it
+ */
+@CacheableTask
+public class JdkPackagesTask extends DefaultTask {
+
+    @Getter(onMethod_ = @Nested)
+    private final Property<JavaLauncher> javaLauncher;
+
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty outputFile;
+
+    private final ExecOperations execOperations;
+
+    @Inject
+    public JdkPackagesTask(ObjectFactory objects, ExecOperations execOperations) {
+        this.execOperations = execOperations;
+        javaLauncher = objects.property(JavaLauncher.class);
+        outputFile = objects.fileProperty();
+    }
+
+    /**
+     * Reads a file written by this task, the keys are the packages and the values the class loaders defining them
+     */
+    @SneakyThrows
+    static Map<String, String> read(File file) {
+        Map<String, String> result = new TreeMap<>();
+        for(String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            int separator = line.indexOf(' ');
+            if(separator > 0) {
+                result.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return result;
+    }
+
+    @TaskAction
+    @SneakyThrows
+    public void run() {
+        File listerClasspath = new File(JdkPackageLister.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        execOperations.javaexec(spec -> {
+            spec.setExecutable(javaLauncher.get().getExecutablePath().getAsFile());
+            spec.classpath(listerClasspath);
+            spec.getMainClass().set(JdkPackageLister.class.getName());
+            spec.args(outputFile.get().getAsFile().getAbsolutePath());
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package net.corda.osgi.app;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * Lays out the application in one directory per layer, from the least to the most frequently changing one,
+ * so that container images and deployments only ship the layers that actually changed:
+ * <ul>
+ *     <li>{@code bootstrap}: the bootstrapper and the OSGi framework, in {@code bootstrap/lib}</li>
+ *     <li>{@code dependencies}: the released third party bundles, in {@code dependencies/bundles}</li>
+ *     <li>{@code application}: the bundles of the build itself and the snapshot bundles, in {@code application/bundles}</li>
+ *     <li>{@code metadata}: the files generated in {@code META-INF} and the launcher jar</li>
+ * </ul>
+ * The layers are listed in {@code layers.idx}, in the format used by Spring Boot. The launcher jar only holds
+ * a manifest whose {@code Class-Path} spans the other layers, so the application is started with
+ * {@code java -jar metadata/<launcher jar>} as long as the layers keep the same relative locations.
+ * The bootstrapper finds the {@code bundles/} entries of {@code bundle_list} on that classpath.
+ */
+public class LayeredApplicationTask extends DefaultTask {
+
+    static final String LAYER_INDEX_FILE = "layers.idx";
+    static final String BOOTSTRAP_LAYER = "bootstrap";
+    static final String DEPENDENCIES_LAYER = "dependencies";
+    static final String APPLICATION_LAYER = "application";
+    static final String METADATA_LAYER = "metadata";
+
+    private static final String BUNDLES_DIRECTORY = "bundles";
+    private static final String LIB_DIRECTORY = "lib";
+
+    // same constant timestamp as the reproducible archives of Gradle
+    private static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    @Getter(onMethod_ = @Classpath)
+    private final ConfigurableFileCollection bootstrapClasspath;
+
+    /**
+     * The bundles that are not in {@link #getApplicationBundles()}
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NAME_ONLY)})
+    private final ConfigurableFileCollection dependencyBundles;
+
+    /**
+     * The bundles built by this build and the snapshot bundles
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NAME_ONLY)})
+    private final ConfigurableFileCollection applicationBundles;
+
+    /**
+     * Files copied as they are to {@code META-INF}
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NAME_ONLY)})
+    private final ConfigurableFileCollection metadataFiles;
+
+    /**
+     * Main attributes of the manifest of the launcher jar, besides {@code Class-Path}
+     */
+    @Getter(onMethod_ = @Input)
+    private final MapProperty<String, String> manifestAttributes;
+
+    @Getter(onMethod_ = @Input)
+    private final Property<String> launcherJarName;
+
+    @Getter(onMethod_ = @OutputDirectory)
+    private final DirectoryProperty outputDirectory;
+
+    private final FileSystemOperations fileSystemOperations;
+
+    @Inject
+    public LayeredApplicationTask(ObjectFactory objects, FileSystemOperations fileSystemOperations) {
+        this.fileSystemOperations = fileSystemOperations;
+        bootstrapClasspath = objects.fileCollection();
+        dependencyBundles = objects.fileCollection();
+        applicationBundles = objects.fileCollection();
+        metadataFiles = objects.fileCollection();
+        manifestAttributes = objects.mapProperty(String.class, String.class);
+        launcherJarName = objects.property(String.class).convention("osgi-app.jar");
+        outputDirectory = objects.directoryProperty();
+    }
+
+    @SneakyThrows
+    private static void copy(Iterable<File> files, Path destination, Set<String> names) {
+        Files.createDirectories(destination);
+        for(File file : files) {
+            // bundle_list and the classpath refer to the files by name only
+            if(!names.add(file.getName())) {
+                throw new GradleException(String.format("More than one file named '%s' in the layered application", file.getName()));
+            }
+            if(file.isDirectory()) {
+                Path source = file.toPath();
+                try(Stream<Path> paths = Files.walk(source)) {
+                    for(Path path : (Iterable<Path>) paths::iterator) {
+                        Path target = destination.resolve(file.getName()).resolve(source.relativize(path).toString());
+                        if(Files.isDirectory(path)) {
+                            Files.createDirectories(target);
+                        } else {
+                            Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                }
+            } else {
+                Files.copy(file.toPath(), destination.resolve(file.getName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    @TaskAction
+    @SneakyThrows
+    public void run() {
+        fileSystemOperations.delete(spec -> spec.delete(outputDirectory));
+        Path root = outputDirectory.get().getAsFile().toPath();
+        Path metadata = root.resolve(METADATA_LAYER);
+
+        copy(bootstrapClasspath, root.resolve(BOOTSTRAP_LAYER).resolve(LIB_DIRECTORY), new HashSet<>());
+        Set<String> bundleNames = new HashSet<>();
+        copy(dependencyBundles, root.resolve(DEPENDENCIES_LAYER).resolve(BUNDLES_DIRECTORY), bundleNames);
+        copy(applicationBundles, root.resolve(APPLICATION_LAYER).resolve(BUNDLES_DIRECTORY), bundleNames);
+        copy(metadataFiles, metadata.resolve("META-INF"), new HashSet<>());
+
+        // relative to the launcher jar: the metadata layer first, for its META-INF files, then the bundles and the bootstrapper
+        List<String> classPath = new ArrayList<>();
+        classPath.add("./");
+        classPath.add("../" + APPLICATION_LAYER + "/");
+        classPath.add("../" + DEPENDENCIES_LAYER + "/");
+        for(File file : bootstrapClasspath) {
+            classPath.add("../" + BOOTSTRAP_LAYER + "/" + LIB_DIRECTORY + "/" + file.getName() + (file.isDirectory() ? "/" : ""));
+        }
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for(Map.Entry<String, String> entry : manifestAttributes.get().entrySet()) {
+            attributes.putValue(entry.getKey(), entry.getValue());
+        }
+        attributes.put(Attributes.Name.CLASS_PATH, String.join(" ", classPath));
+        try(OutputStream outputStream = Files.newOutputStream(metadata.resolve(launcherJarName.get()));
+            JarOutputStream jarOutputStream = new JarOutputStream(outputStream)) {
+            JarEntry entry = new JarEntry(JarFile.MANIFEST_NAME);
+            entry.setTime(ENTRY_TIME);
+            jarOutputStream.putNextEntry(entry);
+            manifest.write(jarOutputStream);
+            jarOutputStream.closeEntry();
+        }
+
+        try(Writer writer = Files.newBufferedWriter(root.resolve(LAYER_INDEX_FILE), StandardCharsets.UTF_8)) {
+            for(String layer : new String[] {BOOTSTRAP_LAYER, DEPENDENCIES_LAYER, APPLICATION_LAYER, METADATA_LAYER}) {
+                writer.write("- \"" + layer + "\":\n");
+                writer.write("  - \"" + layer + "/\"\n");
+            }
+        }
+    }
+}
@@ -45,6 +45,25 @@ class OsgiAppExtension {
     @Getter
     private final Property<String> frameworkFactoryClass;
 
+    @Getter
+    private final Property<Boolean> uncompressedBundles;
+
+    @Getter
+    private final Property<Boolean> resolveBundles;
+
+    /**
+     * Adds the JDK packages the bundles reference the most to {@code org.osgi.framework.bootdelegation},
+     * see {@link BootDelegationTask}
+     */
+    @Getter
+    private final Property<Boolean> optimiseBootDelegation;
+
+    /**
+     * Minimum number of classes referencing a package for {@link #getOptimiseBootDelegation()} to boot delegate it
+     */
+    @Getter
+    private final Property<Integer> bootDelegationThreshold;
+
     @Inject
     public OsgiAppExtension(ObjectFactory objects) {
         frameworkFactoryClass = objects.property(String.class)
@@ -64,9 +83,21 @@ class OsgiAppExtension {
                 "javax.xml.stream.events;version=1.0",
                 "javax.xml.stream.util;version=1.0").collect(Collectors.toList()));
         mainApplicationComponent = objects.property(String.class);
+        uncompressedBundles = objects.property(Boolean.class).convention(false);
+        resolveBundles = objects.property(Boolean.class).convention(true);
+        optimiseBootDelegation = objects.property(Boolean.class).convention(false);
+        bootDelegationThreshold = objects.property(Integer.class).convention(10);
     }
 
     public void agent(String className, String args) {
         javaAgents.add(new JavaAgent(className, args));
     }
+
+    /**
+     * @param order agents are initialised in ascending order
+     * @param concurrent whether the agent can be initialised in parallel with the other concurrent agents of the same order
+     */
+    public void agent(String className, String args, int order, boolean concurrent) {
+        javaAgents.add(new JavaAgent(className, args, order, concurrent));
+    }
 }
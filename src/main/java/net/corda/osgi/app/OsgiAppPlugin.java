@@ -5,32 +5,59 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.gradle.api.Action;
+import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
+import org.gradle.api.Transformer;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.ArtifactCollection;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.ExternalDependency;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
 import org.gradle.api.artifacts.dsl.DependencyHandler;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition;
 import org.gradle.api.attributes.LibraryElements;
+import org.gradle.api.file.ArchiveOperations;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DuplicatesStrategy;
 import org.gradle.api.file.FileCollection;
-import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.plugins.BasePluginExtension;
 import org.gradle.api.plugins.ExtraPropertiesExtension;
 import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.plugins.JavaPluginExtension;
 import org.gradle.api.provider.Provider;
-import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+import org.gradle.jvm.toolchain.JavaToolchainService;
+import org.gradle.process.CommandLineArgumentProvider;
 
+import javax.inject.Inject;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.function.Supplier;
+import java.util.concurrent.Callable;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 
@@ -103,6 +130,154 @@ public class OsgiAppPlugin implements Plugin<Project> {
     }
 
 
+    /**
+     * Adds {@code -XX:SharedArchiveFile} to the JVM arguments when the CDS archive exists
+     */
+    @RequiredArgsConstructor
+    public static final class CdsArchiveArgumentProvider implements CommandLineArgumentProvider {
+
+        @Getter(onMethod_ = @Internal)
+        private final RegularFileProperty archiveFile;
+
+        /**
+         * {@link #getArchiveFile()} when it exists, so that running without the archive isn't an error
+         */
+        @InputFile
+        @Optional
+        @PathSensitive(PathSensitivity.NONE)
+        public Provider<RegularFile> getExistingArchiveFile() {
+            return archiveFile.map(file -> file.getAsFile().exists() ? file : null);
+        }
+
+        @Override
+        public Iterable<String> asArguments() {
+            if(getExistingArchiveFile().isPresent()) {
+                return Collections.singletonList("-XX:SharedArchiveFile=" + archiveFile.get().getAsFile().getAbsolutePath());
+            } else {
+                return Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * Adds {@code -javaagent} for the jar of the bootstrapper, whose {@code Premain-Class} is {@code JavaAgentLauncher}
+     */
+    @RequiredArgsConstructor
+    public static final class JavaAgentArgumentProvider implements CommandLineArgumentProvider {
+
+        private static final String LAUNCHER_CLASS_FILE = "net/corda/osgi/simple/bootstrapper/JavaAgentLauncher.class";
+
+        @Getter(onMethod_ = @Classpath)
+        private final FileCollection bootstrapClasspath;
+
+        @Override
+        @SneakyThrows
+        public Iterable<String> asArguments() {
+            for(File file : bootstrapClasspath) {
+                if(file.isFile() && OsgiAppUtils.isJar(file.getName())) {
+                    try(JarFile jarFile = new JarFile(file, false)) {
+                        if(jarFile.getEntry(LAUNCHER_CLASS_FILE) != null) {
+                            return Collections.singletonList("-javaagent:" + file.getAbsolutePath());
+                        }
+                    }
+                }
+            }
+            throw new GradleException(String.format("No Java agent launcher found in '%s' configuration",
+                    OsgiAppExtension.BOOTSTRAP_CLASSPATH_CONFIGURATION_NAME));
+        }
+    }
+
+    /**
+     * Stores the entries of the jar uncompressed when {@code uncompressed} is true, which lets the bootstrapper
+     * install the bundles from a memory mapped view of the jar
+     */
+    @RequiredArgsConstructor
+    private static final class EntryCompressionAction implements Action<Task> {
+        private final Provider<Boolean> uncompressed;
+
+        @Override
+        public void execute(Task task) {
+            ((Jar) task).setEntryCompression(uncompressed.get() ? ZipEntryCompression.STORED : ZipEntryCompression.DEFLATED);
+        }
+    }
+
+    /**
+     * Maps a flag to {@code files} when it is true and to no files otherwise
+     */
+    @RequiredArgsConstructor
+    private static final class EnabledFiles implements Transformer<Object, Boolean> {
+        private final Object files;
+
+        @Override
+        public Object transform(Boolean enabled) {
+            return enabled ? files : Collections.emptyList();
+        }
+    }
+
+    /**
+     * Maps the entries of a classpath to their content: the directories as they are, the jars to their zip tree
+     */
+    @RequiredArgsConstructor
+    private static final class ClasspathContents implements Transformer<List<Object>, Set<FileSystemLocation>> {
+        private final ArchiveOperations archiveOperations;
+
+        @Override
+        public List<Object> transform(Set<FileSystemLocation> classpath) {
+            List<Object> result = new ArrayList<>();
+            for(FileSystemLocation location : classpath) {
+                File file = location.getAsFile();
+                result.add(file.isDirectory() ? file : archiveOperations.zipTree(file));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The bundles built by this build or published as snapshots, they change more often than the other bundles
+     */
+    @RequiredArgsConstructor
+    private static final class ApplicationBundles implements Callable<List<File>> {
+        private final ArtifactCollection artifacts;
+        private final Provider<RegularFile> projectJar;
+        private final FileCollection bundles;
+
+        @Override
+        public List<File> call() {
+            Set<File> changing = new HashSet<>();
+            for(ResolvedArtifactResult artifact : artifacts) {
+                ComponentIdentifier id = artifact.getId().getComponentIdentifier();
+                if(id instanceof ProjectComponentIdentifier ||
+                        (id instanceof ModuleComponentIdentifier && ((ModuleComponentIdentifier) id).getVersion().endsWith("-SNAPSHOT"))) {
+                    changing.add(artifact.getFile());
+                }
+            }
+            changing.add(projectJar.get().getAsFile());
+            return bundles.getFiles().stream().filter(changing::contains).collect(Collectors.toList());
+        }
+    }
+
+    private final ArchiveOperations archiveOperations;
+
+    @Inject
+    public OsgiAppPlugin(ArchiveOperations archiveOperations) {
+        this.archiveOperations = archiveOperations;
+    }
+
+    /**
+     * Main attributes of the manifest of the jars the application is launched from
+     */
+    private static Map<String, String> applicationManifestAttributes(OsgiAppExtension osgiAppExtension) {
+        MapBuilder<String, String, TreeMap<String,String>> mapBuilder = MapBuilder.getInstance(TreeMap<String,String>::new)
+                .of("Main-Class", "net.corda.osgi.simple.bootstrapper.Bootstrapper")
+                .of("Launcher-Agent-Class", "net.corda.osgi.simple.bootstrapper.JavaAgentLauncher")
+                .of("Can-Redefine-Classes", Boolean.toString(true))
+                .of("Can-Retransform-Classes", Boolean.toString(true));
+        if(osgiAppExtension.getMainApplicationComponent().isPresent()) {
+            mapBuilder.of("Main-Application-Component", osgiAppExtension.getMainApplicationComponent().get());
+        }
+        return mapBuilder.buildImmutable();
+    }
+
     @Override
     @SneakyThrows
     public void apply(Project project) {
@@ -175,54 +350,100 @@ public class OsgiAppPlugin implements Plugin<Project> {
                 it -> {});
 
         Provider<PropertyFileTask> frameworkPropertyFileTaskProvider = project.getTasks().register("frameworkPropertyFile", PropertyFileTask.class, task -> {
-            task.getFileName().set("framework.properties");
+            task.getOutputFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/frameworkPropertyFile/framework.properties"));
             task.getProperties().set(osgiAppExtension.getFrameworkProperties());
         });
 
         Provider<PropertyFileTask> systemPropertyFileTaskProvider = project.getTasks().register("systemPropertyFile", PropertyFileTask.class, task -> {
-            task.getFileName().set("system.properties");
+            task.getOutputFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/systemPropertyFile/system.properties"));
             task.getProperties().set(osgiAppExtension.getSystemProperties());
         });
 
         Provider<JavaAgentFileTask> javaAgentFileTask = project.getTasks().register("javaAgentFile", JavaAgentFileTask.class, task -> {
             task.getJavaAgents().set(osgiAppExtension.javaAgents);
+            task.getOutputFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/javaAgentFile/javaAgents.properties"));
+        });
+
+        dependencyHandler.getAttributesSchema().attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE);
+        dependencyHandler.getArtifactTypes().maybeCreate(ArtifactTypeDefinition.JAR_TYPE)
+                .getAttributes().attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE, false);
+        dependencyHandler.registerTransform(BundleFilterTransform.class, spec -> {
+            spec.getFrom().attribute(BundleFilterTransform.ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE)
+                    .attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE, false);
+            spec.getTo().attribute(BundleFilterTransform.ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE)
+                    .attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE, true);
+        });
+        dependencyHandler.registerTransform(SystemPackagesTransform.class, spec -> {
+            spec.getFrom().attribute(BundleFilterTransform.ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE)
+                    .attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE, false);
+            spec.getTo().attribute(BundleFilterTransform.ARTIFACT_TYPE_ATTRIBUTE, SystemPackagesTransform.SYSTEM_PACKAGES_TYPE)
+                    .attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE, false);
         });
 
         Provider<Jar> jarFileTask = project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class);
-        Supplier<FileCollection> bundlesSupplier = () -> {
-            return bundlesConf.get()
-                .minus(systemPackagesConf).plus(project.files(jarFileTask.get().getArchiveFile()))
-                .filter(new Spec<File>() {
-                    @Override
-                    @SneakyThrows
-                    public boolean isSatisfiedBy(File file) {
-                        return OsgiAppUtils.isJar(file.getName());
-                    }
-                });
-        };
+        // nothing here is resolved before a task needs it
+        FileCollection bundles = project.files(bundlesConf.map(conf -> conf.getIncoming().artifactView(view ->
+                view.getAttributes().attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE, true)).getFiles()))
+                .minus(project.files(systemPackagesConf))
+                // the project jar is not a resolved artifact, it goes through the same check as the transformed ones
+                .plus(project.files(jarFileTask.flatMap(Jar::getArchiveFile)).filter(new BundleFilterTransform.BundleSpec()));
+
+        Provider<SystemPackageExtraFileTask> systemPackageExtraFileTask = project.getTasks().register("systemPackageExtraFile", SystemPackageExtraFileTask.class, task -> {
+            task.getPackageLists().from(systemPackagesConf.getIncoming().artifactView(view ->
+                    view.getAttributes().attribute(BundleFilterTransform.ARTIFACT_TYPE_ATTRIBUTE,
+                            SystemPackagesTransform.SYSTEM_PACKAGES_TYPE)).getFiles());
+            task.getOutputFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/systemPackageExtraFile/system_packages"));
+        });
+
+        JavaToolchainService javaToolchainService = project.getExtensions().getByType(JavaToolchainService.class);
+        JavaPluginExtension javaPluginExtension = project.getExtensions().getByType(JavaPluginExtension.class);
+        Provider<JdkPackagesTask> jdkPackagesTask = project.getTasks().register("jdkPackages", JdkPackagesTask.class, task -> {
+            task.getJavaLauncher().convention(javaToolchainService.launcherFor(javaPluginExtension.getToolchain()));
+            task.getOutputFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/jdkPackages/jdk_packages"));
+        });
 
-        Provider<SystemPackageExtraFileTask> systemPackageExtraFileTask = project.getTasks().register("systemPackageExtraFile", SystemPackageExtraFileTask.class);
+        Provider<BootDelegationTask> bootDelegationTask = project.getTasks().register("bootDelegation", BootDelegationTask.class, task -> {
+            task.getBundles().from(bundles);
+            task.getSystemPackagesFile().set(systemPackageExtraFileTask.flatMap(SystemPackageExtraFileTask::getOutputFile));
+            task.getJdkPackagesFile().set(jdkPackagesTask.flatMap(JdkPackagesTask::getOutputFile));
+            task.getThreshold().set(osgiAppExtension.getBootDelegationThreshold());
+            task.getBundleParent().set(osgiAppExtension.getFrameworkProperties().getting(BootDelegationTask.BUNDLE_PARENT).orElse("boot"));
+            task.getConfiguredBootDelegation().set(osgiAppExtension.getFrameworkProperties().getting(BootDelegationTask.BOOT_DELEGATION));
+            task.getOutputFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/bootDelegation/boot_delegation.properties"));
+            task.getReportFile().convention(project.getLayout().getBuildDirectory().file("reports/osgi/boot-delegation.txt"));
+        });
+        project.getTasks().named("frameworkPropertyFile", PropertyFileTask.class, task -> task.getPropertyFiles().from(
+                osgiAppExtension.getOptimiseBootDelegation().map(
+                        new EnabledFiles(bootDelegationTask.flatMap(BootDelegationTask::getOutputFile)))));
 
         Provider<BundleFileTask> bundleFileTask = project.getTasks()
                 .register("bundleFile", BundleFileTask.class, task -> {
-                    task.getInputs().files(jarFileTask);
-                    FileCollection bundles = bundlesSupplier.get();
-                    task.getInputs().files(bundlesSupplier.get());
-                    bundles.forEach(task::bundle);
+                    task.getBundles().from(bundles);
+                    task.getResolve().set(osgiAppExtension.getResolveBundles());
+                    task.getSystemPackagesFile().set(systemPackageExtraFileTask.flatMap(SystemPackageExtraFileTask::getOutputFile));
+                    task.getJdkPackagesFile().set(jdkPackagesTask.flatMap(JdkPackagesTask::getOutputFile));
+                    task.getFrameworkClasspath().from(bootstrapClasspathConf);
+                    task.getOutputFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/bundleFile/bundle_list"));
+                    task.getWiringFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/bundleFile/bundle_wiring"));
+                    task.getIndexFile().convention(project.getLayout().getBuildDirectory().file("osgiApp/bundleFile/bundle_index"));
                 });
 
+        // only needed by the tasks assembling the application, compiling the project doesn't depend on it
+        Provider<FrameworkRuntimeCheck> frameworkRuntimeCheckTaskProvider =
+            project.getTasks().register("frameworkRuntimeCheck",
+                FrameworkRuntimeCheck.class, OsgiAppExtension.BOOTSTRAP_CLASSPATH_CONFIGURATION_NAME,
+                    project.files(bootstrapClasspathConf));
+        project.getTasks().named("frameworkRuntimeCheck", FrameworkRuntimeCheck.class, task -> task.getMarkerFile().convention(
+                project.getLayout().getBuildDirectory().file("osgiApp/frameworkRuntimeCheck/framework-runtime")));
+
         Provider<Jar> osgiJar = project.getTasks().register("osgiJar", Jar.class, (Jar task) -> {
+            task.dependsOn(frameworkRuntimeCheckTaskProvider);
             BasePluginExtension basePluginExtension = project.getExtensions()
                     .findByType(BasePluginExtension.class);
             task.getDestinationDirectory().set(basePluginExtension.getDistsDirectory());
             task.getArchiveClassifier().set("osgi");
 
-            FileCollection bundles = bundlesSupplier.get();
-            Provider<Jar> jarTaskProvider = project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class);
-            task.getInputs().files(bootstrapClasspathConf);
-            task.getInputs().files(bundles);
             task.getInputs().files(systemPackagesConf);
-//            task.getInputs().file(jarTaskProvider);
 
             task.exclude("META-INF/MANIFEST.MF");
             task.exclude("META-INF/*.SF");
@@ -235,15 +456,13 @@ public class OsgiAppPlugin implements Plugin<Project> {
             task.exclude("module-info.class");
             task.exclude("META-INF/versions/*/module-info.class");
             task.setDuplicatesStrategy(DuplicatesStrategy.WARN);
-            MapBuilder<String, String, TreeMap<String,String>> mapBuilder = MapBuilder.getInstance(TreeMap<String,String>::new)
-                    .of("Main-Class", "net.corda.osgi.simple.bootstrapper.Bootstrapper")
-                    .of("Launcher-Agent-Class", "net.corda.osgi.simple.bootstrapper.JavaAgentLauncher")
-                    .of("Can-Redefine-Classes", Boolean.toString(true))
-                    .of("Can-Retransform-Classes", Boolean.toString(true));
-            if(osgiAppExtension.getMainApplicationComponent().isPresent()) {
-                mapBuilder.of("Main-Application-Component", osgiAppExtension.getMainApplicationComponent().get());
-            }
-            task.getManifest().attributes(mapBuilder.buildImmutable());
+            // the same inputs produce the same jar, for the tasks consuming it to be up to date or taken from the cache
+            task.setPreserveFileTimestamps(false);
+            task.setReproducibleFileOrder(true);
+            // read when the task runs, so that a value set later in the build script is honoured
+            task.getInputs().property("uncompressedBundles", osgiAppExtension.getUncompressedBundles());
+            task.doFirst(new EntryCompressionAction(osgiAppExtension.getUncompressedBundles()));
+            task.getManifest().attributes(applicationManifestAttributes(osgiAppExtension));
 
 
             task.into("META-INF/", copySpec -> {
@@ -253,38 +472,70 @@ public class OsgiAppPlugin implements Plugin<Project> {
                 copySpec.from(systemPropertyFileTaskProvider);
                 copySpec.from(systemPackageExtraFileTask);
             });
-            task.from(bootstrapClasspathConf.get().getFiles().stream().map(it -> {
-                if(it.isDirectory()) {
-                    return it;
-                } else {
-                    return project.zipTree(it);
-                }
-            }).collect(Collectors.toList()));
-            task.into("bundles", copySpec -> {
-                copySpec.from(bundlesSupplier.get(), copySpec2 ->
-                    copySpec2.eachFile(new Action<FileCopyDetails>() {
-                       @Override
-                       @SneakyThrows
-                       public void execute(FileCopyDetails fcd) {
-                           try (JarFile jarFile = new JarFile(fcd.getFile())) {
-                               if (!OsgiAppUtils.isBundle(jarFile)) {
-                                   fcd.exclude();
-                               }
-                           }
-                       }
-                   })
-                );
-            });
+            // resolved when the copy spec is walked, not while configuring
+            task.from(project.files(bootstrapClasspathConf).getElements().map(new ClasspathContents(archiveOperations)));
+            task.into("bundles", copySpec -> copySpec.from(bundles));
+        });
+
+        Provider<CdsArchiveTask> cdsArchiveTask = project.getTasks().register("osgiCdsArchive", CdsArchiveTask.class, task -> {
+            task.getApplicationJar().set(osgiJar.flatMap(Jar::getArchiveFile));
+            task.getJavaLauncher().convention(javaToolchainService.launcherFor(javaPluginExtension.getToolchain()));
+            // kept out of the distribution directory, which belongs to osgiJar
+            task.getArchiveFile().convention(project.getLayout().getBuildDirectory().dir("osgiCds").flatMap(dir -> dir.file(
+                    osgiJar.flatMap(Jar::getArchiveFileName).map(name -> name.replaceAll("\\.jar$", "") + ".jsa"))));
+            task.getClassListFile().convention(project.getLayout().getBuildDirectory().file("osgiCds/classes.lst"));
+            task.getCoverageReportFile().convention(project.getLayout().getBuildDirectory().file("reports/osgiCds/coverage.txt"));
         });
 
         project.getTasks().register("osgiRun", JavaExec.class, javaExec -> {
             javaExec.setClasspath(project.files(osgiJar));
+            // picks up the archive created by osgiCdsArchive, if any, without depending on it
+            CdsArchiveArgumentProvider cdsArchiveArgumentProvider = new CdsArchiveArgumentProvider(project.getObjects().fileProperty());
+            cdsArchiveArgumentProvider.getArchiveFile().set(project.provider(() -> cdsArchiveTask.get().getArchiveFile().get()));
+            javaExec.getJvmArgumentProviders().add(cdsArchiveArgumentProvider);
         });
 
-        Provider<FrameworkRuntimeCheck> frameworkRuntimeCheckTaskProvider =
-            project.getTasks().register("frameworkRuntimeCheck",
-                FrameworkRuntimeCheck.class, bootstrapClasspathConf);
-        project.getTasks().named(JavaPlugin.CLASSES_TASK_NAME,
-                t -> t.dependsOn(frameworkRuntimeCheckTaskProvider));
+        Provider<ExplodedApplicationTask> explodedApplicationTask = project.getTasks().register("osgiExploded", ExplodedApplicationTask.class, task -> {
+            task.dependsOn(frameworkRuntimeCheckTaskProvider);
+            task.getBundleListFile().set(bundleFileTask.flatMap(BundleFileTask::getOutputFile));
+            task.getWiringFile().set(bundleFileTask.flatMap(BundleFileTask::getWiringFile));
+            task.getBundles().from(bundles);
+            task.getMetadataFiles().from(javaAgentFileTask.flatMap(JavaAgentFileTask::getOutputFile));
+            task.getMetadataFiles().from(frameworkPropertyFileTaskProvider.flatMap(PropertyFileTask::getOutputFile));
+            task.getMetadataFiles().from(systemPropertyFileTaskProvider.flatMap(PropertyFileTask::getOutputFile));
+            task.getMetadataFiles().from(systemPackageExtraFileTask.flatMap(SystemPackageExtraFileTask::getOutputFile));
+            task.getMainApplicationComponent().set(osgiAppExtension.getMainApplicationComponent());
+            task.getOutputDirectory().convention(project.getLayout().getBuildDirectory().dir("osgiExploded"));
+        });
+
+        project.getTasks().register("osgiLayered", LayeredApplicationTask.class, task -> {
+            task.dependsOn(frameworkRuntimeCheckTaskProvider);
+            ConfigurableFileCollection applicationBundles = project.files(new ApplicationBundles(
+                    bundlesConf.get().getIncoming().artifactView(view ->
+                            view.getAttributes().attribute(BundleFilterTransform.BUNDLE_ATTRIBUTE, true)).getArtifacts(),
+                    jarFileTask.flatMap(Jar::getArchiveFile),
+                    bundles));
+            applicationBundles.builtBy(bundles);
+            task.getBootstrapClasspath().from(bootstrapClasspathConf);
+            task.getApplicationBundles().from(applicationBundles);
+            task.getDependencyBundles().from(bundles.minus(applicationBundles));
+            task.getMetadataFiles().from(bundleFileTask.flatMap(BundleFileTask::getOutputFile));
+            task.getMetadataFiles().from(bundleFileTask.flatMap(BundleFileTask::getWiringFile));
+            task.getMetadataFiles().from(javaAgentFileTask.flatMap(JavaAgentFileTask::getOutputFile));
+            task.getMetadataFiles().from(frameworkPropertyFileTaskProvider.flatMap(PropertyFileTask::getOutputFile));
+            task.getMetadataFiles().from(systemPropertyFileTaskProvider.flatMap(PropertyFileTask::getOutputFile));
+            task.getMetadataFiles().from(systemPackageExtraFileTask.flatMap(SystemPackageExtraFileTask::getOutputFile));
+            task.getManifestAttributes().set(project.provider(() -> applicationManifestAttributes(osgiAppExtension)));
+            task.getOutputDirectory().convention(project.getLayout().getBuildDirectory().dir("osgiLayered"));
+        });
+
+        // same as osgiRun, without assembling the application jar
+        project.getTasks().register("osgiRunExploded", JavaExec.class, javaExec -> {
+            javaExec.setClasspath(project.files(explodedApplicationTask.flatMap(ExplodedApplicationTask::getOutputDirectory))
+                    .plus(project.files(bootstrapClasspathConf)));
+            javaExec.getMainClass().set("net.corda.osgi.simple.bootstrapper.Bootstrapper");
+            // there is no Launcher-Agent-Class without -jar, the Java agents are started from the bootstrapper jar instead
+            javaExec.getJvmArgumentProviders().add(new JavaAgentArgumentProvider(project.files(bootstrapClasspathConf)));
+        });
     }
 }
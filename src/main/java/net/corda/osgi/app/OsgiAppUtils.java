@@ -5,6 +5,15 @@ import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.SneakyThrows;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.jar.JarFile;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -19,4 +28,30 @@ public class OsgiAppUtils {
     static boolean isJar(String fileName) {
         return fileName.endsWith(".jar");
     }
+
+    /**
+     * Writes {@code properties} in the format of {@link Properties#store(java.io.OutputStream, String)},
+     * without the timestamp comment, one sorted line per entry and with '\n' line separators,
+     * so that the same properties always produce the same bytes
+     */
+    @SneakyThrows
+    static void writeProperties(File destination, Map<String, String> properties) {
+        Properties props = new Properties();
+        props.putAll(properties);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        props.store(bos, null);
+        // store escapes the line breaks of the keys and the values, each entry holds a single line
+        List<String> lines = new ArrayList<>();
+        for(String line : new String(bos.toByteArray(), StandardCharsets.ISO_8859_1).split("\\R")) {
+            if(!line.isEmpty() && !line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        Collections.sort(lines);
+        StringBuilder sb = new StringBuilder();
+        for(String line : lines) {
+            sb.append(line).append('\n');
+        }
+        Files.write(destination.toPath(), sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
 }
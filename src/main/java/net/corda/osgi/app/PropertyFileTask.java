@@ -3,46 +3,62 @@ package net.corda.osgi.app;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.MapProperty;
-import org.gradle.api.provider.Property;
-import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
 import java.io.File;
-import java.io.Writer;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
+@CacheableTask
 public class PropertyFileTask extends DefaultTask {
 
-    @Getter(onMethod_ = @Input)
-    private final Property<String> fileName;
-
-    @OutputFile
-    Provider<File> getOutputFile() {
-        return fileName.map(name -> new File(getTemporaryDir(), name));
-    }
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty outputFile;
 
     @Getter(onMethod_ = @Input)
     final MapProperty<String, String> properties;
 
+    /**
+     * Property files generated by other tasks, merged into the output after {@link #getProperties()}
+     * so that their values take precedence
+     */
+    @Getter(onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NONE)})
+    private final ConfigurableFileCollection propertyFiles;
+
     @Inject
     public PropertyFileTask(ObjectFactory objects) {
-        fileName = objects.property(String.class);
+        outputFile = objects.fileProperty();
         properties = objects.mapProperty(String.class, String.class);
+        propertyFiles = objects.fileCollection();
     }
 
     @TaskAction
     @SneakyThrows
     void run() {
-        try(Writer writer = Files.newBufferedWriter(getOutputFile().get().toPath())) {
+        Map<String, String> result = new TreeMap<>(this.properties.get());
+        for(File file : propertyFiles) {
             Properties properties = new Properties();
-            properties.putAll(this.properties.get());
-            properties.store(writer, null);
+            try(InputStream inputStream = Files.newInputStream(file.toPath())) {
+                properties.load(inputStream);
+            }
+            for(String key : properties.stringPropertyNames()) {
+                result.put(key, properties.getProperty(key));
+            }
         }
+        OsgiAppUtils.writeProperties(outputFile.get().getAsFile(), result);
     }
-}
\ No newline at end of file
+}
@@ -1,83 +1,58 @@
 package net.corda.osgi.app;
 
-import aQute.bnd.header.Attrs;
-import aQute.bnd.header.OSGiHeader;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.artifacts.ArtifactCollection;
-import org.gradle.api.artifacts.ResolvableDependencies;
-import org.gradle.api.artifacts.result.ResolvedArtifactResult;
-import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.util.Map;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.NavigableSet;
 import java.util.TreeSet;
-import java.util.jar.JarFile;
-
-import static net.corda.osgi.app.OsgiAppUtils.isBundle;
-import static net.corda.osgi.app.OsgiAppUtils.isJar;
 
+@CacheableTask
 public class SystemPackageExtraFileTask extends DefaultTask {
 
     @Getter(onMethod_ = @Input)
     private final ListProperty<String> extraSystemPackages;
 
-    final File systemPackagesExtraFile;
+    @Getter(onMethod_ = @OutputFile)
+    private final RegularFileProperty outputFile;
 
     @Inject
     public SystemPackageExtraFileTask(ObjectFactory objects) {
         extraSystemPackages = objects.listProperty(String.class);
-        systemPackagesExtraFile = new File(getTemporaryDir(), "system_packages");
-    }
-
-    @InputFiles
-    FileCollection getInputFiles() {
-        return getProject().getConfigurations().getByName("systemPackages");
+        packageLists = objects.fileCollection();
+        outputFile = objects.fileProperty();
     }
 
-    @OutputFile
-    File getOutputFile() {
-        return systemPackagesExtraFile;
-    }
+    /**
+     * The packages of each artifact of the {@code systemPackages} configuration, computed by {@link SystemPackagesTransform}
+     */
+    @Getter(value = AccessLevel.PACKAGE, onMethod_ = {@InputFiles, @PathSensitive(PathSensitivity.NONE)})
+    private final ConfigurableFileCollection packageLists;
 
     @SneakyThrows
-    private NavigableSet<String> buildPackagesExtra(ArtifactCollection artifacts) {
+    private NavigableSet<String> buildPackagesExtra() {
         TreeSet<String> result = new TreeSet<>();
-        for(ResolvedArtifactResult resolvedArtifactResult : artifacts.getArtifacts()) {
-            if(isJar(resolvedArtifactResult.getFile().getName())) {
-                try(JarFile jarFile = new JarFile(resolvedArtifactResult.getFile(), true, JarFile.OPEN_READ, JarFile.runtimeVersion())) {
-                    if (isBundle(jarFile)) {
-                        String exportPackages = jarFile.getManifest().getMainAttributes().getValue(org.osgi.framework.Constants.EXPORT_PACKAGE);
-                        if(exportPackages != null) {
-                            for (Map.Entry<String, Attrs> entry : OSGiHeader.parseHeader(exportPackages).entrySet()) {
-                                String exportString = entry.getKey() + ";" + entry.getValue().toString();
-                                result.add(exportString);
-                            }
-                        }
-                    } else {
-                        jarFile.versionedStream()
-                                .filter(jarEntry -> jarEntry.getName().endsWith(".class"))
-                                .forEach(jarEntry -> {
-                                    String entryName = jarEntry.getName();
-                                    int end = entryName.lastIndexOf('/');
-                                    if (end > 0) {
-                                        String export = entryName.substring(0, end).replace('/', '.');
-                                        result.add(export);
-                                    }
-                                });
-                    }
+        for(File file : packageLists) {
+            for(String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if(!line.isEmpty()) {
+                    result.add(line);
                 }
             }
         }
@@ -88,11 +63,10 @@ public class SystemPackageExtraFileTask extends DefaultTask {
     @TaskAction
     @SneakyThrows
     public void run() {
-        ResolvableDependencies resolvableDependencies = getProject().getConfigurations().getByName("systemPackages").getIncoming();
-        try(BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(systemPackagesExtraFile)))) {
-            for(String export : buildPackagesExtra(resolvableDependencies.getArtifacts())) {
+        try(Writer writer = Files.newBufferedWriter(outputFile.get().getAsFile().toPath(), StandardCharsets.UTF_8)) {
+            for(String export : buildPackagesExtra()) {
                 writer.write(export);
-                writer.newLine();
+                writer.write('\n');
             }
         }
     }
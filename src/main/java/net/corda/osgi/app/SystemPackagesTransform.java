@@ -0,0 +1,71 @@
+package net.corda.osgi.app;
+
+import aQute.bnd.header.Attrs;
+import aQute.bnd.header.OSGiHeader;
+import lombok.SneakyThrows;
+import org.gradle.api.artifacts.transform.CacheableTransform;
+import org.gradle.api.artifacts.transform.InputArtifact;
+import org.gradle.api.artifacts.transform.TransformAction;
+import org.gradle.api.artifacts.transform.TransformOutputs;
+import org.gradle.api.artifacts.transform.TransformParameters;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+
+import static net.corda.osgi.app.OsgiAppUtils.isBundle;
+import static net.corda.osgi.app.OsgiAppUtils.isJar;
+
+/**
+ * Computes the packages a jar of the {@code systemPackages} configuration adds to the system bundle,
+ * one per line: the Export-Package clauses of a bundle or the packages holding the classes of a plain jar.
+ * Gradle runs the transform once per jar content, in parallel, and caches its result across builds.
+ */
+@CacheableTransform
+public abstract class SystemPackagesTransform implements TransformAction<TransformParameters.None> {
+
+    static final String SYSTEM_PACKAGES_TYPE = "osgi-system-packages";
+
+    @InputArtifact
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract Provider<FileSystemLocation> getInputArtifact();
+
+    @Override
+    @SneakyThrows
+    public void transform(TransformOutputs outputs) {
+        File file = getInputArtifact().get().getAsFile();
+        TreeSet<String> result = new TreeSet<>();
+        if(file.isFile() && isJar(file.getName())) {
+            // the signatures don't matter here, skipping their verification spares reading every entry twice
+            try(JarFile jarFile = new JarFile(file, false, JarFile.OPEN_READ, JarFile.runtimeVersion())) {
+                if(jarFile.getManifest() != null && isBundle(jarFile)) {
+                    String exportPackages = jarFile.getManifest().getMainAttributes().getValue(org.osgi.framework.Constants.EXPORT_PACKAGE);
+                    if(exportPackages != null) {
+                        for (Map.Entry<String, Attrs> entry : OSGiHeader.parseHeader(exportPackages).entrySet()) {
+                            result.add(entry.getKey() + ";" + entry.getValue().toString());
+                        }
+                    }
+                } else {
+                    jarFile.versionedStream()
+                            .filter(jarEntry -> jarEntry.getName().endsWith(".class"))
+                            .forEach(jarEntry -> {
+                                String entryName = jarEntry.getName();
+                                int end = entryName.lastIndexOf('/');
+                                if (end > 0) {
+                                    result.add(entryName.substring(0, end).replace('/', '.'));
+                                }
+                            });
+                }
+            }
+        }
+        File outputFile = outputs.file(file.getName() + ".packages");
+        Files.write(outputFile.toPath(), result, StandardCharsets.UTF_8);
+    }
+}
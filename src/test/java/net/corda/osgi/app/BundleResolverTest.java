@@ -0,0 +1,118 @@
+package net.corda.osgi.app;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+public class BundleResolverTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File bundle(String symbolicName, String... headers) throws Exception {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", symbolicName);
+        attributes.putValue("Bundle-Version", "1.0.0");
+        for(int i = 0; i < headers.length; i += 2) {
+            attributes.putValue(headers[i], headers[i + 1]);
+        }
+        File file = tempDir.resolve(symbolicName + ".jar").toFile();
+        try(OutputStream outputStream = Files.newOutputStream(file.toPath());
+            JarOutputStream jarOutputStream = new JarOutputStream(outputStream, manifest)) {
+            jarOutputStream.finish();
+        }
+        return file;
+    }
+
+    private static List<String> names(BundleResolver.Result result) {
+        return result.getBundles().stream()
+                .map(BundleResolver.BundleDescriptor::getSymbolicName)
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, Set<String>> wiring(BundleResolver.Result result) {
+        Map<String, Set<String>> wiring = new TreeMap<>();
+        result.getProviders().forEach((bundle, providers) -> wiring.put(bundle.getSymbolicName(),
+                providers.stream().map(BundleResolver.BundleDescriptor::getSymbolicName).collect(Collectors.toSet())));
+        return wiring;
+    }
+
+    @Test
+    public void fragmentPackagesAreWiredToTheHost() throws Exception {
+        List<File> files = new ArrayList<>();
+        files.add(bundle("consumer", "Import-Package", "fragment.api"));
+        files.add(bundle("fragment", "Fragment-Host", "host", "Export-Package", "fragment.api", "Import-Package", "library.api"));
+        files.add(bundle("library", "Export-Package", "library.api"));
+        files.add(bundle("host"));
+        BundleResolver.Result result = new BundleResolver(files).resolve();
+
+        Assertions.assertEquals(Collections.emptyMap(), result.getErrors());
+        Map<String, Set<String>> wiring = wiring(result);
+        Assertions.assertEquals(Collections.singleton("host"), wiring.get("consumer"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("host", "library")), wiring.get("fragment"));
+        List<String> order = names(result);
+        Assertions.assertTrue(order.indexOf("host") < order.indexOf("consumer"));
+        Assertions.assertTrue(order.indexOf("host") < order.indexOf("fragment"));
+    }
+
+    @Test
+    public void frameworkExtensionPackagesAreProvidedByTheSystemBundle() throws Exception {
+        List<File> files = new ArrayList<>();
+        files.add(bundle("consumer", "Import-Package", "extension.api"));
+        files.add(bundle("extension", "Fragment-Host", "system.bundle; extension:=framework",
+                "Export-Package", "extension.api", "Import-Package", "library.api"));
+        files.add(bundle("library", "Export-Package", "library.api"));
+        BundleResolver.Result result = new BundleResolver(files).resolve();
+
+        Assertions.assertEquals(Collections.emptyMap(), result.getErrors());
+        Map<String, Set<String>> wiring = wiring(result);
+        Assertions.assertEquals(Collections.emptySet(), wiring.get("consumer"));
+        Assertions.assertEquals(Collections.singleton("library"), wiring.get("extension"));
+        Assertions.assertEquals(3, result.getBundles().size());
+    }
+
+    @Test
+    public void fragmentWithoutHostIsReported() throws Exception {
+        List<File> files = new ArrayList<>();
+        files.add(bundle("consumer", "Import-Package", "fragment.api"));
+        files.add(bundle("fragment", "Fragment-Host", "host", "Export-Package", "fragment.api"));
+        BundleResolver.Result result = new BundleResolver(files).resolve();
+
+        Map<String, List<String>> errors = new TreeMap<>();
+        result.getErrors().forEach((bundle, reasons) -> errors.put(bundle.getSymbolicName(), reasons));
+        Assertions.assertEquals(Collections.singletonList("missing fragment host 'host'"), errors.get("fragment"));
+        Assertions.assertEquals(Collections.singletonList("missing package 'fragment.api'"), errors.get("consumer"));
+        Assertions.assertEquals(Collections.emptyList(), result.getBundles());
+    }
+
+    @Test
+    public void jdkPackagesAreNotReportedAsMissing() throws Exception {
+        List<File> files = Collections.singletonList(bundle("consumer", "Import-Package", "javax.xml.stream,javax.missing"));
+        BundleResolver resolver = new BundleResolver(files);
+        resolver.addJdkPackages(Collections.singleton("javax.xml.stream"));
+        BundleResolver.Result result = resolver.resolve();
+
+        List<String> reasons = result.getErrors().values().iterator().next();
+        Assertions.assertEquals(Collections.singletonList("missing package 'javax.missing'"), reasons);
+    }
+}
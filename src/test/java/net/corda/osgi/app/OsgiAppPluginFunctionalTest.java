@@ -0,0 +1,91 @@
+package net.corda.osgi.app;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarFile;
+
+/**
+ * Runs the plugin in a Gradle build, against the bootstrapper modules published by the {@code test} task
+ * to the repository in the {@code osgiApp.testRepository} system property
+ */
+public class OsgiAppPluginFunctionalTest {
+
+    @TempDir
+    Path projectDir;
+
+    private void writeBuild(String... extraLines) throws Exception {
+        String repository = new File(System.getProperty("osgiApp.testRepository")).toURI().toString();
+        Files.write(projectDir.resolve("settings.gradle"),
+                "rootProject.name = 'test-app'\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(projectDir.resolve("build.gradle"), String.join("\n",
+                "plugins {",
+                "    id 'net.corda.plugins.osgi-app'",
+                "}",
+                "",
+                "repositories {",
+                "    maven { url = '" + repository + "' }",
+                "    mavenCentral()",
+                "}",
+                "",
+                "osgiApp {",
+                "    bootstrapperVersion = '" + System.getProperty("osgiApp.bootstrapperVersion") + "'",
+                "}",
+                "",
+                "dependencies {",
+                "    bootstrapClasspath 'org.apache.felix:org.apache.felix.framework:" + System.getProperty("osgiApp.felixVersion") + "'",
+                "}",
+                String.join("\n", extraLines),
+                "").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BuildResult osgiJar() {
+        return GradleRunner.create()
+                .withProjectDir(projectDir.toFile())
+                .withPluginClasspath()
+                .withArguments("osgiJar", "--configuration-cache", "--stacktrace")
+                .forwardOutput()
+                .build();
+    }
+
+    @Test
+    public void osgiJarReusesTheConfigurationCache() throws Exception {
+        writeBuild();
+        BuildResult first = osgiJar();
+        Assertions.assertEquals(TaskOutcome.SUCCESS, first.task(":osgiJar").getOutcome());
+        Assertions.assertTrue(first.getOutput().contains("Configuration cache entry stored."), first.getOutput());
+
+        BuildResult second = osgiJar();
+        Assertions.assertTrue(second.getOutput().contains("Reusing configuration cache."), second.getOutput());
+        Assertions.assertEquals(TaskOutcome.UP_TO_DATE, second.task(":osgiJar").getOutcome());
+    }
+
+    @Test
+    public void projectJarIsOnlyPackagedWhenItIsABundle() throws Exception {
+        // replaces the bundle built by bnd with a plain jar
+        writeBuild(
+                "tasks.named('jar') {",
+                "    actions.clear()",
+                "    doLast {",
+                "        File file = archiveFile.get().asFile",
+                "        file.parentFile.mkdirs()",
+                "        new java.util.jar.JarOutputStream(new FileOutputStream(file), new java.util.jar.Manifest()).close()",
+                "    }",
+                "}");
+        BuildResult result = osgiJar();
+        Assertions.assertEquals(TaskOutcome.SUCCESS, result.task(":osgiJar").getOutcome());
+        File applicationJar = projectDir.resolve("build/distributions/test-app-osgi.jar").toFile();
+        try(JarFile jarFile = new JarFile(applicationJar)) {
+            Assertions.assertNull(jarFile.getEntry("bundles/test-app.jar"));
+            Assertions.assertTrue(jarFile.stream().anyMatch(it -> it.getName().startsWith("bundles/")));
+        }
+    }
+}